@@ -3,11 +3,20 @@ package com.paladincloud.assetsender;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.paladincloud.common.DaggerServerComponent;
+import com.paladincloud.common.assets.AssetChanges;
+import com.paladincloud.common.aws.SQSHelper;
+import com.paladincloud.common.jobs.TimeBudget;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -15,11 +24,19 @@ import org.apache.logging.log4j.Logger;
 public class AssetDoneHandler implements RequestHandler<SQSEvent, Integer> {
 
     private static final Logger LOGGER = LogManager.getLogger(AssetDoneHandler.class);
+    // A message (or stats request) isn't started with less time than this left; it's sent back to
+    // the queue instead. Running out of time fails the invocation, so the whole batch of messages
+    // is delivered again.
+    private static final long MIN_START_MILLIS = 300_000;
 
     @Override
     public Integer handleRequest(SQSEvent event, Context context) {
         var componentResolver = DaggerServerComponent.create();
+        var timeBudget = context == null ? TimeBudget.unlimited()
+            : TimeBudget.fromRemaining(context.getRemainingTimeInMillis());
         var parser = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
+        // Stats requests are combined per tenant and run after the assets are processed
+        var statsRequests = new LinkedHashMap<String, StatsRequest>();
         for (var message : event.getRecords()) {
             var body = message.getBody();
             if (body.contains("\"Message\" :")) {
@@ -40,9 +57,102 @@ public class AssetDoneHandler implements RequestHandler<SQSEvent, Integer> {
             while (matches.find()) {
                 args.add(matches.group().replace("\"", ""));
             }
-            componentResolver.buildAssetSenderJob().run("AssetShipper", args.toArray(new String[0]));
+
+            var argMap = toMap(args);
+            if (AssetStatsJob.JOB_ASSET_STATS.equals(argMap.get(AssetStatsJob.JOB))) {
+                var tenantId = argMap.get("tenant_id");
+                if (tenantId == null || !argMap.containsKey(AssetStatsJob.DATA_SOURCE)) {
+                    LOGGER.error("Ignoring incomplete stats request: {}", body);
+                    continue;
+                }
+                statsRequests.computeIfAbsent(tenantId,
+                    _ -> new StatsRequest(tenantId, message)).add(argMap);
+                continue;
+            }
+            if (timeBudget.isLimited() && !timeBudget.hasTimeFor(MIN_START_MILLIS)) {
+                requeue(componentResolver.buildSQSHelper(), message, body);
+                continue;
+            }
+            var job = componentResolver.buildAssetSenderJob();
+            job.withTimeBudget(timeBudget).run("AssetShipper", args.toArray(new String[0]));
+            job.getFollowUpMessages().forEach(
+                followUp -> requeue(componentResolver.buildSQSHelper(), message, followUp.body(),
+                    followUp.delaySeconds()));
         }
 
+        statsRequests.values().forEach(request -> {
+            var args = AssetStatsJob.toArguments(request.tenantId,
+                List.copyOf(request.dataSources), request.requestedAt,
+                request.hasUnknownChanges ? null : request.changes);
+            if (timeBudget.isLimited() && !timeBudget.hasTimeFor(MIN_START_MILLIS)) {
+                requeue(componentResolver.buildSQSHelper(), request.message, args);
+                return;
+            }
+            DaggerServerComponent.create().buildAssetStatsJob()
+                .run("AssetStats", args.split(" "));
+        });
+
         return 0;
     }
+
+    /**
+     * Sends the body back to the queue the message came from, to be picked up by another
+     * invocation.
+     */
+    private static void requeue(SQSHelper sqsHelper, SQSMessage message, String body) {
+        requeue(sqsHelper, message, body, 0);
+    }
+
+    private static void requeue(SQSHelper sqsHelper, SQSMessage message, String body,
+        int delaySeconds) {
+        var queueUrl = SQSHelper.queueUrlFromArn(message.getEventSourceArn());
+        LOGGER.info("Sending follow up message to {} in {} seconds (body={})", queueUrl,
+            delaySeconds, body);
+        sqsHelper.sendRawMessage(queueUrl, body, delaySeconds);
+    }
+
+    private static Map<String, String> toMap(List<String> args) {
+        var argMap = new HashMap<String, String>();
+        args.forEach(arg -> {
+            var tokens = arg.trim().split("=", 2);
+            if (tokens.length == 2) {
+                argMap.put(tokens[0].replaceFirst("^--", ""), tokens[1]);
+            }
+        });
+        return argMap;
+    }
+
+    /**
+     * The stats requests of a tenant combined; the earliest request time is kept so nothing
+     * collected before any of the requests is mistaken for being current. The changes are
+     * combined too, unless a request doesn't say what changed.
+     */
+    private static class StatsRequest {
+
+        private final String tenantId;
+        // The first message of the requests, whose queue the combined request is sent back to
+        private final SQSMessage message;
+        private final Set<String> dataSources = new LinkedHashSet<>();
+        private long requestedAt = Long.MAX_VALUE;
+        private AssetChanges changes = AssetChanges.empty();
+        private boolean hasUnknownChanges = false;
+
+        StatsRequest(String tenantId, SQSMessage message) {
+            this.tenantId = tenantId;
+            this.message = message;
+        }
+
+        void add(Map<String, String> argMap) {
+            dataSources.addAll(List.of(argMap.get(AssetStatsJob.DATA_SOURCE).split(",")));
+            var requested = argMap.get(AssetStatsJob.REQUESTED_AT);
+            requestedAt = Math.min(requestedAt,
+                requested == null ? System.currentTimeMillis() : Long.parseLong(requested));
+            var requestChanges = argMap.get(AssetStatsJob.CHANGES);
+            if (requestChanges == null) {
+                hasUnknownChanges = true;
+            } else {
+                changes = changes.merge(AssetChanges.fromArgument(requestChanges));
+            }
+        }
+    }
 }
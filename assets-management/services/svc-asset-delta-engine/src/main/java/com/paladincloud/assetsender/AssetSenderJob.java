@@ -3,20 +3,32 @@ package com.paladincloud.assetsender;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.paladincloud.common.ProcessingDoneMessage;
-import com.paladincloud.common.assets.AssetCounts;
-import com.paladincloud.common.assets.AssetGroupStatsCollector;
+import com.paladincloud.common.assets.AssetChanges;
+import com.paladincloud.common.assets.AssetCheckpoint;
+import com.paladincloud.common.assets.AssetStats;
 import com.paladincloud.common.assets.Assets;
-import com.paladincloud.common.assets.DataSourceHelper;
+import com.paladincloud.common.assets.CompletionTracker;
+import com.paladincloud.common.assets.DynamoDBCompletionTracker;
+import com.paladincloud.common.assets.LocalCompletionTracker;
+import com.paladincloud.common.assets.WorkUnit;
 import com.paladincloud.common.aws.SNSHelper;
 import com.paladincloud.common.aws.SQSHelper;
 import com.paladincloud.common.config.AssetTypes;
 import com.paladincloud.common.config.ConfigConstants;
+import com.paladincloud.common.config.ConfigConstants.AssetGroupStats;
 import com.paladincloud.common.config.ConfigConstants.Dev;
+import com.paladincloud.common.config.ConfigConstants.FanOut;
 import com.paladincloud.common.config.ConfigService;
 import com.paladincloud.common.errors.JobException;
 import com.paladincloud.common.jobs.JobExecutor;
+import com.paladincloud.common.search.IndexShardPlanner;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import javax.inject.Inject;
 import org.apache.logging.log4j.LogManager;
@@ -31,6 +43,26 @@ public class AssetSenderJob extends JobExecutor {
     private static final String REPORTING_SOURCE = "reporting_source";
     private static final String REPORTING_SOURCE_SERVICE = "reporting_source_service";
     private static final String REPORTING_SOURCE_SERVICE_DISPLAY_NAME = "reporting_source_service_display_name";
+    // An optional argument to run maintenance rather than process assets; 'shards' splits the
+    // indexes of the data source that have outgrown their shard count.
+    private static final String MAINTENANCE = "maintenance";
+    private static final String MAINTENANCE_SHARDS = "shards";
+    // Set on a continuation, the AssetCheckpoint of the invocations that ran out of time
+    public static final String CHECKPOINT = "checkpoint";
+    // An optional argument; 'true' splits the types of the data source into work units, each
+    // sent back to the queue to be processed by a worker of its own.
+    private static final String FAN_OUT = "fan_out";
+    // Set on the messages of a fan out, the WorkUnit the worker processes
+    public static final String WORK_UNIT = "work_unit";
+    private static final String DEFAULT_FAN_OUT_UNIT_SIZE_MB = "512";
+    private static final String DEFAULT_FAN_OUT_MAX_UNITS = "20";
+    private static final String DEFAULT_FAN_OUT_MAX_TYPE_PARTITIONS = "1";
+    private static final String DEFAULT_FAN_OUT_MAX_UNIT_ATTEMPTS = "3";
+    private static final String DEFAULT_FAN_OUT_UNIT_RETRY_DELAY_SECONDS = "300";
+
+    // SQS limits message delays to 15 minutes
+    private static final int MAX_DELAY_SECONDS = 900;
+    private static final String DEFAULT_STATS_DELAY_SECONDS = "60";
 
     private static final Logger LOGGER = LogManager.getLogger(AssetSenderJob.class);
 
@@ -38,21 +70,32 @@ public class AssetSenderJob extends JobExecutor {
     private final Assets assets;
     private final SQSHelper sqsHelper;
     private final SNSHelper snsHelper;
-    private final DataSourceHelper dataSourceHelper;
-    private final AssetGroupStatsCollector assetGroupStatsCollector;
-    private final AssetCounts assetCounts;
+    private final AssetStats assetStats;
+    private final IndexShardPlanner shardPlanner;
+    private final LocalCompletionTracker localCompletionTracker;
+    // The messages of the work this job hands on: a continuation, when the job ran out of time
+    // before all types were done, the work units of a fan out, or a failed work unit to retry
+    private final List<FollowUpMessage> followUpMessages = new ArrayList<>();
 
     @Inject
     AssetSenderJob(AssetTypes assetTypes, Assets assets, SQSHelper sqsHelper, SNSHelper snsHelper,
-        DataSourceHelper dataSourceHelper, AssetGroupStatsCollector assetGroupStatsCollector,
-        AssetCounts assetCounts) {
+        AssetStats assetStats, IndexShardPlanner shardPlanner,
+        LocalCompletionTracker localCompletionTracker) {
         this.assetTypes = assetTypes;
         this.assets = assets;
         this.sqsHelper = sqsHelper;
         this.snsHelper = snsHelper;
-        this.dataSourceHelper = dataSourceHelper;
-        this.assetGroupStatsCollector = assetGroupStatsCollector;
-        this.assetCounts = assetCounts;
+        this.assetStats = assetStats;
+        this.shardPlanner = shardPlanner;
+        this.localCompletionTracker = localCompletionTracker;
+    }
+
+    /**
+     * The arguments (as message bodies) of the invocations that carry on the job's work; empty if
+     * the job completed it.
+     */
+    public List<FollowUpMessage> getFollowUpMessages() {
+        return followUpMessages;
     }
 
 
@@ -60,6 +103,17 @@ public class AssetSenderJob extends JobExecutor {
     protected void execute() {
         var dataSource = params.get(DATA_SOURCE);
 
+        if (params.containsKey(MAINTENANCE)) {
+            var maintenance = params.get(MAINTENANCE);
+            if (!MAINTENANCE_SHARDS.equalsIgnoreCase(maintenance)) {
+                throw new JobException(STR."Unknown maintenance: \{maintenance}");
+            }
+            LOGGER.info("Running shard maintenance; dataSource={} tenant={}", dataSource,
+                tenantId);
+            shardPlanner.growIndices(dataSource);
+            return;
+        }
+
         LOGGER.info(
             "Processing assets; bucket={} dataSource={} path={} tenant={}",
             ConfigService.get(ConfigConstants.S3.BUCKET_NAME), dataSource, params.get(S3_PATH),
@@ -86,26 +140,77 @@ public class AssetSenderJob extends JobExecutor {
         // a secondary source.
         var isOpinion = reportingSource != null && !dataSource.equalsIgnoreCase(reportingSource);
 
-        if (!isOpinion) {
-            assetTypes.setupIndexAndTypes(dataSource);
+        var checkpoint = params.containsKey(CHECKPOINT) ? AssetCheckpoint.fromArgument(
+            params.get(CHECKPOINT)) : new AssetCheckpoint(Set.of(), AssetChanges.empty());
+        var workUnit = params.containsKey(WORK_UNIT) ? WorkUnit.fromArgument(params.get(WORK_UNIT))
+            : null;
+
+        // The indexes are set up (and the types split up, when fanning out) by the invocation
+        // that starts the data source; work units and continuations carry on from there.
+        var fanOut = "true".equalsIgnoreCase(params.get(FAN_OUT));
+        // Each worker of a Lambda has memory of its own, so without the table the last unit
+        // could never tell it's the last; the data source is processed here instead.
+        if (fanOut && !envVars.containsKey(WORK_UNIT_TABLE) && timeBudget.isLimited()) {
+            LOGGER.error("Not fanning out {}: {} isn't set; processing it in this invocation",
+                dataSource, WORK_UNIT_TABLE);
+            fanOut = false;
+        }
+        if (workUnit == null && !params.containsKey(CHECKPOINT) && (!isOpinion || fanOut)) {
+            var typeSizes = assets.estimateTypeSizes(dataSource, params.get(S3_PATH));
+            if (!isOpinion) {
+                assetTypes.setupIndexAndTypes(dataSource, typeSizes);
+            }
+            if (fanOut) {
+                fanOut(dataSource, typeSizes);
+                return;
+            }
         }
-        var processedAssetTypes = assets.process(dataSource, params.get(S3_PATH), isOpinion,
-            reportingSource,
-            reportingSourceService,
-            reportingSourceServiceDisplayName);
 
-        if (!isOpinion) {
-            if ("true".equalsIgnoreCase(ConfigService.get(Dev.SKIP_ASSET_COUNT))) {
-                LOGGER.error("Skipping asset count");
-            } else {
-                try {
-                    var dataSourceInfo = dataSourceHelper.fetch(dataSource);
-                    assetGroupStatsCollector.collectStats(dataSourceInfo.assetGroups());
-                    assetCounts.populate(dataSource, dataSourceInfo.accountIds());
-                } catch (Exception e) {
-                    throw new JobException("Error populating asset stats", e);
+        var skippedTypes = new HashSet<>(checkpoint.completedTypes());
+        if (workUnit != null) {
+            assetTypes.getTypes(dataSource).stream()
+                .filter(type -> !workUnit.types().contains(type))
+                .forEach(skippedTypes::add);
+        }
+        var processedAssetTypes = new LinkedHashSet<>(checkpoint.completedTypes());
+        AssetChanges changes;
+        try {
+            processedAssetTypes.addAll(assets.process(dataSource, params.get(S3_PATH), isOpinion,
+                reportingSource,
+                reportingSourceService,
+                reportingSourceServiceDisplayName,
+                skippedTypes,
+                workUnit == null ? null : workUnit.partition(),
+                timeBudget));
+            changes = checkpoint.changes().merge(assets.getChanges());
+
+            // The done event and stats wait for the last of the types
+            if (!assets.getRemainingTypes().isEmpty()) {
+                followUpMessages.add(new FollowUpMessage(toMessage(CHECKPOINT,
+                    new AssetCheckpoint(processedAssetTypes, changes.limited()).toArgument()),
+                    0));
+                LOGGER.info("Continuing {} later; completed={} remaining={}", dataSource,
+                    processedAssetTypes, assets.getRemainingTypes());
+                return;
+            }
+            if (workUnit != null) {
+                var completion = getCompletionTracker().complete(workUnit, processedAssetTypes,
+                    changes);
+                if (completion == null) {
+                    LOGGER.info("Work unit {}/{} of {} is done; waiting on the other units",
+                        workUnit.index() + 1, workUnit.count(), dataSource);
+                    return;
                 }
+                processedAssetTypes = new LinkedHashSet<>(completion.types());
+                changes = completion.changes();
+            }
+        } catch (RuntimeException e) {
+            // The run completes only once every unit has, so a failed unit is sent back to the
+            // queue rather than dropped with its message
+            if (workUnit != null) {
+                retryWorkUnit(dataSource, workUnit);
             }
+            throw e;
         }
 
         var completedEvent = new ProcessingDoneMessage("delta-engine-" + dataSource, dataSource,
@@ -133,10 +238,134 @@ public class AssetSenderJob extends JobExecutor {
                 sqsHelper.sendMessage(sqsUrl, completedEvent, UUID.randomUUID().toString());
             }
         }
+
+        // The stats aren't needed by asset state or the policy engine, so they're collected only
+        // once the done event is on its way.
+        if (!isOpinion) {
+            if ("true".equalsIgnoreCase(ConfigService.get(Dev.SKIP_ASSET_COUNT))) {
+                LOGGER.error("Skipping asset count");
+            } else {
+                requestAssetStats(dataSource, changes);
+            }
+        }
+    }
+
+    /**
+     * Sends a delayed stats request, so data sources of the tenant finishing within the delay are
+     * collected by a single AssetStatsJob. Without a stats queue, the stats are collected here.
+     */
+    private void requestAssetStats(String dataSource, AssetChanges changes) {
+        var requestedAt = System.currentTimeMillis();
+        var statsUrl = envVars.get(OUTPUT_TRIGGER_ASSET_STATS);
+        if (statsUrl == null) {
+            assetStats.collect(tenantId, List.of(dataSource), requestedAt, changes,
+                assets.getMergeCounts());
+            return;
+        }
+
+        var delaySeconds = Math.min(MAX_DELAY_SECONDS, Integer.parseInt(
+            ConfigService.get(AssetGroupStats.TRIGGER_DELAY_SECONDS,
+                DEFAULT_STATS_DELAY_SECONDS)));
+        var request = AssetStatsJob.toArguments(tenantId, List.of(dataSource), requestedAt,
+            changes);
+        LOGGER.info("Requesting asset stats from {} in {} seconds (request={})", statsUrl,
+            delaySeconds, request);
+        sqsHelper.sendDelayedMessage(statsUrl, request, delaySeconds);
+    }
+
+    /**
+     * Splits the types into work units by the size of their mapper files and hands each on as a
+     * message of its own. The unit that finishes last sends the done event and stats request.
+     */
+    private void fanOut(String dataSource, Map<String, Long> typeSizes) {
+        var unitSize = Long.parseLong(
+            ConfigService.get(FanOut.UNIT_SIZE_MB, DEFAULT_FAN_OUT_UNIT_SIZE_MB)) * 1024 * 1024;
+        var maxUnits = Integer.parseInt(
+            ConfigService.get(FanOut.MAX_UNITS, DEFAULT_FAN_OUT_MAX_UNITS));
+        var maxTypePartitions = Integer.parseInt(
+            ConfigService.get(FanOut.MAX_TYPE_PARTITIONS, DEFAULT_FAN_OUT_MAX_TYPE_PARTITIONS));
+        var units = WorkUnit.partition(UUID.randomUUID().toString(), typeSizes, unitSize,
+            maxUnits, maxTypePartitions);
+        if (!envVars.containsKey(WORK_UNIT_TABLE)) {
+            LOGGER.warn("{} isn't set; the work units of this local run are tracked in memory",
+                WORK_UNIT_TABLE);
+        }
+        units.forEach(unit -> {
+            LOGGER.info("Fanning out {}: unit {}/{} of run {}; types={} partition={}",
+                dataSource, unit.index() + 1, unit.count(), unit.runId(), unit.types(),
+                unit.partition());
+            followUpMessages.add(new FollowUpMessage(toMessage(WORK_UNIT, unit.toArgument()), 0));
+        });
     }
 
+    /**
+     * Hands on a failed work unit to be processed again after a delay, up to the most attempts
+     * allowed. Past those, the run can't complete; that's left to be alerted on.
+     */
+    private void retryWorkUnit(String dataSource, WorkUnit workUnit) {
+        var maxAttempts = Integer.parseInt(ConfigService.get(FanOut.MAX_UNIT_ATTEMPTS,
+            DEFAULT_FAN_OUT_MAX_UNIT_ATTEMPTS));
+        var retry = workUnit.retry(maxAttempts);
+        if (retry == null) {
+            LOGGER.error(
+                "Work unit {}/{} of run {} failed {} times; giving up, so {} won't be done. types={} partition={}",
+                workUnit.index() + 1, workUnit.count(), workUnit.runId(), workUnit.attempt() + 1,
+                dataSource, workUnit.types(), workUnit.partition());
+            return;
+        }
+
+        var delaySeconds = Math.min(MAX_DELAY_SECONDS, Integer.parseInt(
+            ConfigService.get(FanOut.UNIT_RETRY_DELAY_SECONDS,
+                DEFAULT_FAN_OUT_UNIT_RETRY_DELAY_SECONDS)));
+        LOGGER.error(
+            "Work unit {}/{} of run {} failed (attempt {} of {}); retrying in {} seconds. dataSource={} types={} partition={}",
+            workUnit.index() + 1, workUnit.count(), workUnit.runId(), workUnit.attempt() + 1,
+            maxAttempts, delaySeconds, dataSource, workUnit.types(), workUnit.partition());
+        followUpMessages.add(
+            new FollowUpMessage(toMessage(WORK_UNIT, retry.toArgument()), delaySeconds));
+    }
+
+    /**
+     * The tracker of the work units; the in-memory tracker only serves local runs, where every
+     * unit is processed by the same process.
+     */
+    private CompletionTracker getCompletionTracker() {
+        if (envVars.containsKey(WORK_UNIT_TABLE)) {
+            return new DynamoDBCompletionTracker(envVars.get(REGION),
+                envVars.get(WORK_UNIT_TABLE));
+        }
+        return localCompletionTracker;
+    }
+
+    /**
+     * The job's own arguments, as a message body, with the given argument added (or replaced). The
+     * fan out argument is dropped, so it happens once; arguments with spaces are quoted, as the
+     * handler expects.
+     */
+    private String toMessage(String name, String value) {
+        var messageArgs = new ArrayList<String>();
+        arguments.stream()
+            .filter(arg -> !arg.trim().startsWith(STR."--\{name}=")
+                && !arg.trim().startsWith(STR."--\{FAN_OUT}="))
+            .map(arg -> arg.matches(".*\\s.*") ? STR."\"\{arg}\"" : arg)
+            .forEach(messageArgs::add);
+        messageArgs.add(STR."--\{name}=\{value}");
+        return String.join(" ", messageArgs);
+    }
+
+    /**
+     * A message body for the queue the job came from.
+     *
+     * @param body         - the job arguments
+     * @param delaySeconds - the seconds before the message is delivered; 0 for right away
+     */
+    public record FollowUpMessage(String body, int delaySeconds) {}
+
     @Override
     protected List<String> getRequiredFields() {
+        if (params.containsKey(MAINTENANCE)) {
+            return List.of(DATA_SOURCE);
+        }
         return List.of(DATA_SOURCE, S3_PATH);
     }
 }
@@ -0,0 +1,79 @@
+package com.paladincloud.assetsender;
+
+import com.paladincloud.common.assets.AssetChanges;
+import com.paladincloud.common.assets.AssetStats;
+import com.paladincloud.common.jobs.JobExecutor;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Collects the asset group stats and account asset counts once data sources have been processed.
+ * It's triggered by a stats request sent after the processing done event; requests for the same
+ * tenant received together are combined into one run (see AssetDoneHandler).
+ */
+public class AssetStatsJob extends JobExecutor {
+
+    // The job argument that selects this job, rather than processing assets
+    public static final String JOB = "job";
+    public static final String JOB_ASSET_STATS = "asset_stats";
+    // A comma separated list of data sources
+    public static final String DATA_SOURCE = "data_source";
+    // When the stats were requested, in epoch milliseconds
+    public static final String REQUESTED_AT = "requested_at";
+    // Optional; what changed, see AssetChanges. Without it, everything is considered changed.
+    public static final String CHANGES = "changes";
+
+    private static final Logger LOGGER = LogManager.getLogger(AssetStatsJob.class);
+
+    private final AssetStats assetStats;
+
+    @Inject
+    AssetStatsJob(AssetStats assetStats) {
+        this.assetStats = assetStats;
+    }
+
+    /**
+     * The job arguments of a stats request, in the form parsed by AssetDoneHandler. Changes too
+     * large for a message are sent without their accounts or, failing that, left out, which
+     * considers everything changed.
+     */
+    public static String toArguments(String tenantId, List<String> dataSources,
+        long requestedAt, AssetChanges changes) {
+        var arguments = STR."--\{JOB}=\{JOB_ASSET_STATS} --tenant_id=\{tenantId} --\{DATA_SOURCE}=\{String.join(
+            ",", dataSources)} --\{REQUESTED_AT}=\{requestedAt}";
+        if (changes == null) {
+            return arguments;
+        }
+        var changesArgument = changes.limited().toArgument();
+        if (changesArgument.length() > AssetChanges.MAX_ARGUMENT_LENGTH) {
+            LOGGER.warn("The changes of {} are too large to send; everything is considered changed",
+                dataSources);
+            return arguments;
+        }
+        return STR."\{arguments} --\{CHANGES}=\{changesArgument}";
+    }
+
+    @Override
+    protected void execute() {
+        var dataSources = Arrays.stream(params.get(DATA_SOURCE).split(","))
+            .map(String::trim).filter(StringUtils::isNotBlank).distinct().toList();
+        var requestedAt = params.containsKey(REQUESTED_AT) ? Long.parseLong(
+            params.get(REQUESTED_AT)) : System.currentTimeMillis();
+        var changes = params.containsKey(CHANGES) ? AssetChanges.fromArgument(params.get(CHANGES))
+            : null;
+        LOGGER.info("Collecting asset stats; dataSources={} tenant={} changedIndices={}",
+            dataSources, tenantId, changes == null ? "unknown" : changes.changedIndices());
+        // The merge counts belong to the job that merged; these stats are collected apart from it
+        assetStats.collect(tenantId, dataSources, requestedAt, changes, Map.of());
+    }
+
+    @Override
+    protected List<String> getRequiredFields() {
+        return List.of(DATA_SOURCE);
+    }
+}
@@ -6,7 +6,9 @@ import com.paladincloud.common.assets.AssetGroupStatsCollector;
 import com.paladincloud.common.assets.AssetGroups;
 import com.paladincloud.common.assets.AssetRepository;
 import com.paladincloud.common.assets.AssetStateHelper;
+import com.paladincloud.common.assets.AssetStats;
 import com.paladincloud.common.assets.Assets;
+import com.paladincloud.common.assets.LocalAssetCounts;
 import com.paladincloud.common.assets.DataSourceHelper;
 import com.paladincloud.common.assets.ElasticAssetRepository;
 import com.paladincloud.common.auth.AuthHelper;
@@ -17,7 +19,9 @@ import com.paladincloud.common.aws.SQSHelper;
 import com.paladincloud.common.config.AssetTypes;
 import com.paladincloud.common.mapper.MapperRepository;
 import com.paladincloud.common.mapper.S3MapperRepository;
+import com.paladincloud.common.search.ElasticIndexTemplates;
 import com.paladincloud.common.search.ElasticSearchHelper;
+import com.paladincloud.common.search.IndexShardPlanner;
 import dagger.Module;
 import dagger.Provides;
 import javax.inject.Singleton;
@@ -58,8 +62,9 @@ public class ApplicationModule {
     @Singleton
     @Provides
     AssetTypes provideAssetTypes(ElasticSearchHelper elasticSearch, DatabaseHelper database,
-        AssetGroups assetGroups) {
-        return new AssetTypes(elasticSearch, database, assetGroups);
+        AssetGroups assetGroups, ElasticIndexTemplates indexTemplates,
+        IndexShardPlanner shardPlanner) {
+        return new AssetTypes(elasticSearch, database, assetGroups, indexTemplates, shardPlanner);
     }
 
     @Singleton
@@ -82,14 +87,27 @@ public class ApplicationModule {
 
     @Singleton
     @Provides
-    AssetCounts provideAssetCounts(DatabaseHelper databaseHelper, AssetCountsHelper assetCountsHelper) {
-        return new AssetCounts(databaseHelper, assetCountsHelper);
+    AssetCounts provideAssetCounts(DatabaseHelper databaseHelper,
+        AssetCountsHelper assetCountsHelper, LocalAssetCounts localAssetCounts) {
+        return new AssetCounts(databaseHelper, assetCountsHelper, localAssetCounts);
     }
 
     @Singleton
     @Provides
-    AssetGroupStatsCollector provideAssetGroupStatsCollector(ElasticSearchHelper elasticSearch, AssetCountsHelper assetCountsHelper) {
-        return new AssetGroupStatsCollector(elasticSearch, assetCountsHelper);
+    AssetGroupStatsCollector provideAssetGroupStatsCollector(ElasticSearchHelper elasticSearch,
+        AssetCountsHelper assetCountsHelper, LocalAssetCounts localAssetCounts,
+        AssetTypes assetTypes) {
+        return new AssetGroupStatsCollector(elasticSearch, assetCountsHelper, localAssetCounts,
+            assetTypes);
+    }
+
+    @Singleton
+    @Provides
+    AssetStats provideAssetStats(DataSourceHelper dataSourceHelper,
+        AssetGroupStatsCollector assetGroupStatsCollector, AssetCounts assetCounts,
+        AssetCountsHelper assetCountsHelper) {
+        return new AssetStats(dataSourceHelper, assetGroupStatsCollector, assetCounts,
+            assetCountsHelper);
     }
 
     @Singleton
@@ -1,6 +1,8 @@
 package com.paladincloud.common;
 
 import com.paladincloud.assetsender.AssetSenderJob;
+import com.paladincloud.assetsender.AssetStatsJob;
+import com.paladincloud.common.aws.SQSHelper;
 import dagger.Component;
 import javax.inject.Singleton;
 
@@ -9,4 +11,8 @@ import javax.inject.Singleton;
 public interface ServerComponent {
 
     AssetSenderJob buildAssetSenderJob();
+
+    AssetStatsJob buildAssetStatsJob();
+
+    SQSHelper buildSQSHelper();
 }
@@ -0,0 +1,97 @@
+package com.paladincloud.common.assets;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.util.JsonHelper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A summary of what a run changed: the indexes of the types with new, missing or re-tagged assets
+ * and the accounts of those assets. The stats collection uses it to skip asset groups that weren't
+ * affected.
+ * <p></p>
+ * It's passed along in the stats request as a single job argument (URL safe base64 of the JSON),
+ * which keeps it clear of the spaces and '=' the argument parsing splits on. SQS limits a message
+ * to 256 KB, so the accounts of changes too large to pass along are dropped (see limited).
+ *
+ * @param changedIndices   - the index names, such as 'aws_ec2'
+ * @param affectedAccounts - the account ids of the changed assets; null if unknown, in which case
+ *                         every account is considered affected
+ */
+public record AssetChanges(Set<String> changedIndices, Set<String> affectedAccounts) {
+
+    // The longest argument the changes are passed along as; well under the SQS message limit, as
+    // a continuation or combined stats request carries other arguments as well
+    public static final int MAX_ARGUMENT_LENGTH = 64 * 1024;
+
+    public static AssetChanges empty() {
+        return new AssetChanges(new HashSet<>(), new HashSet<>());
+    }
+
+    public static AssetChanges fromArgument(String argument) {
+        try {
+            return JsonHelper.objectMapper.readValue(
+                Base64.getUrlDecoder().decode(argument), AssetChanges.class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new JobException(STR."Unable to parse asset changes: \{argument}", e);
+        }
+    }
+
+    public String toArgument() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                JsonHelper.toJson(this).getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new JobException("Unable to serialize asset changes", e);
+        }
+    }
+
+    /**
+     * These changes, small enough to pass along as an argument: past MAX_ARGUMENT_LENGTH, without
+     * the affected accounts. The result may still be too long, with a great many changed indexes.
+     */
+    public AssetChanges limited() {
+        if (affectedAccounts == null || toArgument().length() <= MAX_ARGUMENT_LENGTH) {
+            return this;
+        }
+        return new AssetChanges(changedIndices, null);
+    }
+
+    /**
+     * Records the changed assets of an index; nothing is recorded if there are none.
+     */
+    public void add(String indexName, Collection<AssetDTO> changedAssets) {
+        if (changedAssets.isEmpty()) {
+            return;
+        }
+        changedIndices.add(indexName);
+        changedAssets.forEach(asset -> {
+            var accountId = asset.getLegacyAccountId() != null ? asset.getLegacyAccountId()
+                : asset.getAccountId();
+            if (accountId != null && affectedAccounts != null) {
+                affectedAccounts.add(accountId);
+            }
+        });
+    }
+
+    public AssetChanges merge(AssetChanges other) {
+        var merged = empty();
+        merged.changedIndices.addAll(changedIndices);
+        merged.changedIndices.addAll(other.changedIndices);
+        if (affectedAccounts == null || other.affectedAccounts == null) {
+            return new AssetChanges(merged.changedIndices, null);
+        }
+        merged.affectedAccounts.addAll(affectedAccounts);
+        merged.affectedAccounts.addAll(other.affectedAccounts);
+        return merged;
+    }
+
+    public boolean isChanged(Set<String> indexNames) {
+        return indexNames.stream().anyMatch(changedIndices::contains);
+    }
+}
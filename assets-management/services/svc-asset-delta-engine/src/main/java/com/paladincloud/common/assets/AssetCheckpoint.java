@@ -0,0 +1,46 @@
+package com.paladincloud.common.assets;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.util.JsonHelper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * How far a data source got when its processing stopped short of the time budget: the types that
+ * are done and what they changed. It travels in the continuation message, so the next invocation
+ * processes only the remaining types and the final one reports everything in the done event and
+ * stats request.
+ * <p></p>
+ * Like AssetChanges, it's a single job argument (URL safe base64 of the JSON).
+ *
+ * @param completedTypes - the types processed by the earlier invocations
+ * @param changes        - what the earlier invocations changed
+ */
+public record AssetCheckpoint(
+    @JsonDeserialize(as = LinkedHashSet.class)
+    Set<String> completedTypes,
+    AssetChanges changes) {
+
+    public static AssetCheckpoint fromArgument(String argument) {
+        try {
+            return JsonHelper.objectMapper.readValue(
+                Base64.getUrlDecoder().decode(argument), AssetCheckpoint.class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new JobException(STR."Unable to parse asset checkpoint: \{argument}", e);
+        }
+    }
+
+    public String toArgument() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                JsonHelper.toJson(this).getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new JobException("Unable to serialize asset checkpoint", e);
+        }
+    }
+}
@@ -1,46 +1,133 @@
 package com.paladincloud.common.assets;
 
 import com.paladincloud.common.aws.DatabaseHelper;
+import com.paladincloud.common.config.ConfigConstants.AssetGroupStats;
+import com.paladincloud.common.config.ConfigService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 @Singleton
 public class AssetCounts {
 
+    private static final Logger LOGGER = LogManager.getLogger(AssetCounts.class);
+    private static final String COUNT_SOURCE_API = "api";
+
     private final DatabaseHelper database;
     private final AssetCountsHelper assetCountsHelper;
+    private final LocalAssetCounts localAssetCounts;
 
     @Inject
-    public AssetCounts(DatabaseHelper database, AssetCountsHelper assetCountsHelper) {
+    public AssetCounts(DatabaseHelper database, AssetCountsHelper assetCountsHelper,
+        LocalAssetCounts localAssetCounts) {
         this.database = database;
         this.assetCountsHelper = assetCountsHelper;
+        this.localAssetCounts = localAssetCounts;
     }
 
+    /**
+     * Updates the asset count of each account (and, for Azure, of each subscription of the
+     * tenant). The counts of every account come from a single aggregation over the data source
+     * and all the updates are applied as batches in one transaction.
+     *
+     * @param platform   - the data source, such as 'aws'
+     * @param accountIds - the configured accounts of the data source
+     */
     public void populate(String platform, List<String> accountIds) throws Exception {
+        populate(platform, accountIds, null);
+    }
+
+    /**
+     * Updates the asset count of the accounts whose assets changed; for Azure, of the tenants with
+     * a changed subscription.
+     *
+     * @param platform         - the data source, such as 'aws'
+     * @param accountIds       - the configured accounts of the data source
+     * @param affectedAccounts - the accounts (or subscriptions) with changed assets; null for all
+     */
+    public void populate(String platform, List<String> accountIds, Set<String> affectedAccounts)
+        throws Exception {
+        var isAzure = platform.equals("azure");
+        if (affectedAccounts != null && !isAzure) {
+            accountIds = accountIds.stream().filter(affectedAccounts::contains).toList();
+        }
+        if (accountIds.isEmpty()) {
+            return;
+        }
+
+        var tenantSubscriptions = isAzure ? getSubscriptionsForTenants(accountIds)
+            : Map.<String, List<String>>of();
+        if (affectedAccounts != null && isAzure) {
+            accountIds = accountIds.stream().filter(tenant -> tenantSubscriptions.getOrDefault(
+                tenant, List.of()).stream().anyMatch(affectedAccounts::contains)).toList();
+            if (accountIds.isEmpty()) {
+                return;
+            }
+        }
+        var counts = getAccountCounts(platform, accountIds, tenantSubscriptions);
+
+        var subscriptionUpdates = new ArrayList<List<Object>>();
+        var accountUpdates = new ArrayList<List<Object>>();
         for (String accountId : accountIds) {
-            int assetCount;
-            if (platform.equals("azure")) {
-                var subscriptions = getSubscriptionsForTenant(accountId);
-                int summedAssetCount = 0;
-                for (var subscription : subscriptions) {
-                    var count = assetCountsHelper.fetchAccountAssetCount(platform, subscription);
+            long assetCount;
+            if (isAzure) {
+                long summedAssetCount = 0;
+                for (var subscription : tenantSubscriptions.getOrDefault(accountId, List.of())) {
+                    var count = counts.getOrDefault(subscription, 0L);
                     summedAssetCount += count;
-                    database.executeUpdate(
-                        STR."UPDATE cf_AzureTenantSubscription SET assets=\{count} WHERE subscription ='\{subscription}'");
+                    subscriptionUpdates.add(List.of(count, subscription));
                 }
                 assetCount = summedAssetCount;
             } else {
-                assetCount = assetCountsHelper.fetchAccountAssetCount(platform, accountId);
+                assetCount = counts.getOrDefault(accountId, 0L);
             }
+            accountUpdates.add(List.of(assetCount, accountId));
+        }
+
+        var statements = new LinkedHashMap<String, List<List<Object>>>();
+        if (!subscriptionUpdates.isEmpty()) {
+            statements.put("UPDATE cf_AzureTenantSubscription SET assets=? WHERE subscription=?",
+                subscriptionUpdates);
+        }
+        statements.put("UPDATE cf_Accounts SET assets=? WHERE accountId=?", accountUpdates);
+        database.executeBatchUpdates(statements);
+        LOGGER.info("Updated asset counts of {} accounts and {} subscriptions",
+            accountUpdates.size(), subscriptionUpdates.size());
+    }
+
+    /**
+     * The asset count of each account; for Azure, the accounts are the subscriptions.
+     */
+    private Map<String, Long> getAccountCounts(String platform, List<String> accountIds,
+        Map<String, List<String>> tenantSubscriptions) throws Exception {
+        if (!COUNT_SOURCE_API.equalsIgnoreCase(ConfigService.get(AssetGroupStats.COUNT_SOURCE))) {
+            return localAssetCounts.fetchAccountCounts(platform);
+        }
 
-            database.executeUpdate(STR."UPDATE cf_Accounts SET assets=\{assetCount} WHERE accountId='\{accountId}'");
+        var counts = new HashMap<String, Long>();
+        var countedAccounts = tenantSubscriptions.isEmpty() ? accountIds
+            : tenantSubscriptions.values().stream().flatMap(List::stream).toList();
+        for (var accountId : countedAccounts) {
+            counts.put(accountId,
+                (long) assetCountsHelper.fetchAccountAssetCount(platform, accountId));
         }
+        return counts;
     }
 
-    private List<String> getSubscriptionsForTenant(String accountId) {
+    private Map<String, List<String>> getSubscriptionsForTenants(List<String> accountIds) {
         var subscriptions = database.executeQuery(
-            STR."SELECT subscription FROM cf_AzureTenantSubscription WHERE tenant='\{accountId}'");
-        return subscriptions.stream().map(row -> row.get("subscription")).toList();
+            STR."SELECT tenant, subscription FROM cf_AzureTenantSubscription WHERE tenant IN ('\{String.join(
+                "','", accountIds)}')");
+        var tenantSubscriptions = new HashMap<String, List<String>>();
+        subscriptions.forEach(row -> tenantSubscriptions.computeIfAbsent(row.get("tenant"),
+            _ -> new ArrayList<>()).add(row.get("subscription")));
+        return tenantSubscriptions;
     }
 }
@@ -15,16 +15,25 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import javax.inject.Inject;
 
 public class AssetCountsHelper {
     private static final String ASSET_SERVICE_BASE_PATH = "/asset/v1";
     private static final String COMPLIANCE_SERVICE_BASE_PATH = "/compliance/v1";
     private static final String DOMAIN = "domain";
+    private static final String DEFAULT_MAX_REQUESTS_PER_ENDPOINT = "8";
+    private static final Map<String, Semaphore> endpointLimits = new ConcurrentHashMap<>();
 
     private final AuthHelper authHelper;
     private final DatabaseHelper databaseHelper;
     private Map<String, Integer> categoryWeightageMap = null;
+    // The responses of the requests made during a stats collection; cleared by clearResponses
+    private final Map<String, CompletableFuture<String>> responses = new ConcurrentHashMap<>();
 
     @Inject
     public AssetCountsHelper (AuthHelper authHelper, DatabaseHelper databaseHelper) {
@@ -32,6 +41,15 @@ public class AssetCountsHelper {
         this.databaseHelper = databaseHelper;
     }
 
+    /**
+     * Drops the responses kept for identical requests. The instance is shared by the records of an
+     * invocation, so this is done once each stats collection is over; later collections see the
+     * changes made since.
+     */
+    public void clearResponses() {
+        responses.clear();
+    }
+
     public String encodeUrlParameter(String parameter) {
         return URLEncoder.encode(parameter, StandardCharsets.UTF_8);
     }
@@ -40,7 +58,7 @@ public class AssetCountsHelper {
         var url = buildPaladinApiUrl(ASSET_SERVICE_BASE_PATH, STR."/count?ag=\{encodeUrlParameter(assetGroup)}");
         var headers = HttpHelper.getBasicHeaders(AuthorizationType.BEARER, authHelper.getToken());
         headers.put("cache-control", "no-cache");
-        var typeCountMap = JsonHelper.mapFromString(HttpHelper.get(url, headers));
+        var typeCountMap = JsonHelper.mapFromString(get(url, headers));
         @SuppressWarnings("unchecked") var response = (List<Map<String, Object>>) ((Map<String, Object>) typeCountMap.get(
             "data")).get("assetcount");
         return response;
@@ -60,7 +78,7 @@ public class AssetCountsHelper {
                 }
                 """.trim();
             var response = JsonHelper.mapFromString(
-                HttpHelper.post(url, body, AuthorizationType.BEARER, authHelper.getToken()));
+                post(url, body, AuthorizationType.BEARER, authHelper.getToken()));
 
             @SuppressWarnings("unchecked") var infoList = (List<Map<String, Object>>) ((Map<String, Object>) response.get(
                 "data")).get("response");
@@ -83,7 +101,7 @@ public class AssetCountsHelper {
         for (var domain : domains) {
             var url = buildPaladinApiUrl(COMPLIANCE_SERVICE_BASE_PATH,
                 STR."/overallcompliance?ag=\{encodeUrlParameter(assetGroup)}&domain=\{encodeUrlParameter(domain)}");
-            var complianceResponse = JsonHelper.mapFromString(HttpHelper.get(url,
+            var complianceResponse = JsonHelper.mapFromString(get(url,
                 HttpHelper.getBasicHeaders(AuthorizationType.BEARER, authHelper.getToken())));
             @SuppressWarnings("unchecked") var complianceStats = ((Map<String, Map<String, Object>>) complianceResponse.get(
                 "data")).get("distribution");
@@ -107,21 +125,6 @@ public class AssetCountsHelper {
         return compInfo;
     }
 
-    public Map<String, Object> fetchTaggingSummary(String assetGroup) throws Exception {
-        var url = buildPaladinApiUrl(COMPLIANCE_SERVICE_BASE_PATH, STR."/tagging?ag=\{encodeUrlParameter(assetGroup)}");
-        var taggingResponse = JsonHelper.mapFromString(HttpHelper.get(url,
-            HttpHelper.getBasicHeaders(AuthorizationType.BEARER, authHelper.getToken())));
-        @SuppressWarnings("unchecked") var taggingStats = ((Map<String, Map<String, Object>>) taggingResponse.get(
-            "data")).get("output");
-        var total = (int) taggingStats.get("assets");
-        var nonCompliant = (int) taggingStats.get("untagged");
-        var compliant = (int) taggingStats.get("tagged");
-        return new HashMap<>(
-            Map.ofEntries(entry("total", total), entry("noncompliant", nonCompliant),
-                entry("compliant", compliant)));
-    }
-
-
     @SuppressWarnings("unchecked")
     public List<Map<String, Object>> fetchIssuesInfo(String assetGroup, List<String> domains)
         throws Exception {
@@ -129,7 +132,7 @@ public class AssetCountsHelper {
         for (var domain : domains) {
             var url = buildPaladinApiUrl(COMPLIANCE_SERVICE_BASE_PATH,
                 STR."/issues/distribution?ag=\{encodeUrlParameter(assetGroup)}&domain=\{encodeUrlParameter(domain)}");
-            var distributionResponse = JsonHelper.mapFromString(HttpHelper.get(url,
+            var distributionResponse = JsonHelper.mapFromString(get(url,
                 HttpHelper.getBasicHeaders(AuthorizationType.BEARER, authHelper.getToken())));
             @SuppressWarnings("unchecked") var distribution = ((Map<String, Map<String, Object>>) distributionResponse.get(
                 "data")).get("distribution");
@@ -149,7 +152,7 @@ public class AssetCountsHelper {
     @SuppressWarnings("unchecked")
     public Map<String, Object> fetchAssetCounts(String assetGroup) throws Exception {
         var url = buildPaladinApiUrl(ASSET_SERVICE_BASE_PATH, STR."/count?ag=\{encodeUrlParameter(assetGroup)}");
-        var response = JsonHelper.mapFromString(HttpHelper.get(url,
+        var response = JsonHelper.mapFromString(get(url,
             HttpHelper.getBasicHeaders(AuthorizationType.BEARER, authHelper.getToken())));
         return (Map<String, Object>) response.get("data");
     }
@@ -157,7 +160,7 @@ public class AssetCountsHelper {
     public int fetchAccountAssetCount(String platform, String accountId) throws Exception {
         var url = buildPaladinApiUrl(ASSET_SERVICE_BASE_PATH,
             STR."/count?ag=\{encodeUrlParameter(platform)}&accountId=\{encodeUrlParameter(accountId)}");
-        var response = JsonHelper.mapFromString(HttpHelper.get(url,
+        var response = JsonHelper.mapFromString(get(url,
             HttpHelper.getBasicHeaders(AuthorizationType.BEARER, authHelper.getToken())));
         @SuppressWarnings("unchecked") var data = (Map<String, Object>) response.get("data");
         if (data != null && data.containsKey("totalassets")) {
@@ -166,13 +169,87 @@ public class AssetCountsHelper {
         return 0;
     }
 
+    private String get(String url, Map<String, String> headers) throws Exception {
+        return singleFlight(STR."GET \{url}", () -> {
+            var limit = getEndpointLimit(url);
+            limit.acquire();
+            try {
+                return HttpHelper.get(url, headers);
+            } finally {
+                limit.release();
+            }
+        });
+    }
+
+    private String post(String url, String body, AuthorizationType authType, String token)
+        throws Exception {
+        return singleFlight(STR."POST \{url} \{body}", () -> {
+            var limit = getEndpointLimit(url);
+            limit.acquire();
+            try {
+                return HttpHelper.post(url, body, authType, token);
+            } finally {
+                limit.release();
+            }
+        });
+    }
+
+    /**
+     * Returns the response for the request, making the call only if an identical request hasn't
+     * been made yet. Concurrent identical requests wait for the one in flight. Failures aren't
+     * kept, so a later identical request tries again.
+     * <p></p>
+     * The raw response is cached and each caller parses its own copy, as callers modify the
+     * parsed results.
+     */
+    private String singleFlight(String requestKey, Callable<String> call) throws Exception {
+        var pending = new CompletableFuture<String>();
+        var existing = responses.putIfAbsent(requestKey, pending);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            var response = call.call();
+            pending.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Errors too, or the requests waiting on this one would never return
+            responses.remove(requestKey, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Requests are limited per endpoint (the URL without its query), so a burst of concurrent
+     * asset group requests doesn't overwhelm a single API.
+     */
+    private static Semaphore getEndpointLimit(String url) {
+        var queryStart = url.indexOf('?');
+        var endpoint = queryStart < 0 ? url : url.substring(0, queryStart);
+        return endpointLimits.computeIfAbsent(endpoint, _ -> new Semaphore(Integer.parseInt(
+            ConfigService.get(PaladinCloud.MAX_REQUESTS_PER_ENDPOINT,
+                DEFAULT_MAX_REQUESTS_PER_ENDPOINT))));
+    }
+
     private String buildPaladinApiUrl(String servicePath, String additional) {
         return STR."\{ConfigService.get(
             PaladinCloud.BASE_PALADIN_CLOUD_API_URI)}\{servicePath}\{additional}";
 
     }
 
-    private Map<String, Integer> getCategoryWeightedMap() {
+    private synchronized Map<String, Integer> getCategoryWeightedMap() {
         if (categoryWeightageMap == null) {
             var temp = new HashMap<String, Integer>();
             databaseHelper.executeQuery("SELECT * FROM cf_PolicyCategoryWeightage").forEach(
@@ -1,23 +1,34 @@
 package com.paladincloud.common.assets;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.paladincloud.common.AssetDocumentFields;
+import com.paladincloud.common.config.AssetTypes;
+import com.paladincloud.common.config.ConfigConstants.AssetGroupStats;
+import com.paladincloud.common.config.ConfigService;
 import com.paladincloud.common.errors.JobException;
 import com.paladincloud.common.search.ElasticBatch;
 import com.paladincloud.common.search.ElasticBatch.BatchItem;
-import com.paladincloud.common.search.ElasticQueryMapResponse;
 import com.paladincloud.common.search.ElasticSearchHelper;
 import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
+import com.paladincloud.common.util.JsonHelper;
 import com.paladincloud.common.util.StringHelper;
 import com.paladincloud.common.util.TimeHelper;
 import java.io.IOException;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.logging.log4j.LogManager;
@@ -28,17 +39,72 @@ public class AssetGroupStatsCollector {
 
     private static final Logger LOGGER = LogManager.getLogger(AssetGroupStatsCollector.class);
     private static final String ASSET_GROUP_STATS_INDEX = "assetgroup_stats";
+    private static final String DEFAULT_CONCURRENCY = "16";
+    private static final String COUNT_SOURCE_API = "api";
+    // The kinds of stats, stored as the docType
+    private static final String COUNT_TYPE = "count_type";
+    private static final String ISSUE_COMPLIANCE = "issuecompliance";
+    private static final String COMPLIANCE = "compliance";
+    private static final String TAG_COMPLIANCE = "tagcompliance";
+    private static final String ISSUES = "issues";
+    // Derived from the assets alone, so an unchanged asset group can reuse the previous day's
+    private static final List<String> CARRIED_FORWARD_KINDS = List.of(TAG_COMPLIANCE);
+    // Derived from the policy results, which change without the assets changing
+    private static final List<String> POLICY_KINDS = List.of(ISSUE_COMPLIANCE, COMPLIANCE,
+        ISSUES);
+    private static final int CARRY_FORWARD_PAGE_SIZE = 1000;
+    // Widens the count_type min/max of an existing document to include the new count
+    private static final String MIN_MAX_SCRIPT = """
+        if (ctx._source.min == null || params.count < ctx._source.min) { ctx._source.min = params.count; }
+        if (ctx._source.max == null || params.count > ctx._source.max) { ctx._source.max = params.count; }
+        """.trim();
     private final List<String> domains = Collections.singletonList("Infra & Platforms");
     private final ElasticSearchHelper elasticSearch;
     private final AssetCountsHelper assetCountsHelper;
 
+    private final LocalAssetCounts localAssetCounts;
+    private final AssetTypes assetTypes;
+
     @Inject
-    public AssetGroupStatsCollector(ElasticSearchHelper elasticSearch, AssetCountsHelper assetCountsHelper) {
+    public AssetGroupStatsCollector(ElasticSearchHelper elasticSearch,
+        AssetCountsHelper assetCountsHelper, LocalAssetCounts localAssetCounts,
+        AssetTypes assetTypes) {
         this.elasticSearch = elasticSearch;
         this.assetCountsHelper = assetCountsHelper;
+        this.localAssetCounts = localAssetCounts;
+        this.assetTypes = assetTypes;
+    }
+
+    public void collectStats(String dataSource, List<String> assetGroups) throws Exception {
+        collectStats(dataSource, assetGroups, Set.of(), Map.of());
     }
 
-    public void collectStats(List<String> assetGroups) throws Exception {
+    /**
+     * Collects and uploads the stats for the asset groups. Each kind of stat is collected
+     * concurrently and, within each, the asset groups are fetched concurrently on virtual threads.
+     * The number of asset groups being fetched at any time is bounded across all kinds.
+     *
+     * <p></p>
+     * The asset counts are computed locally (see {@link LocalAssetCounts}) unless the count source
+     * is configured as 'api', and tag compliance is always aggregated locally; the other compliance
+     * and issue stats come from the Paladin API.
+     *
+     * <p></p>
+     * The compliance and issue stats come from the policy results, so they're always collected.
+     * The stats derived from the assets alone (counts and tag compliance) of an unchanged asset
+     * group are only collected if it has none for today; even then, its tag compliance is carried
+     * forward from the previous day when there is any, while its counts are recomputed, which is
+     * cheap.
+     *
+     * @param dataSource      - the data source just processed
+     * @param assetGroups     - the asset groups to collect stats for
+     * @param unchangedGroups - the asset groups whose assets didn't change since their stats were
+     *                        last collected
+     * @param mergeCounts     - the active asset count of each type of the data source merged by
+     *                        the calling job; empty if the stats aren't collected by that job
+     */
+    public void collectStats(String dataSource, List<String> assetGroups,
+        Set<String> unchangedGroups, Map<String, Long> mergeCounts) throws Exception {
         if (assetGroups.isEmpty()) {
             return;
         }
@@ -46,58 +112,52 @@ public class AssetGroupStatsCollector {
         elasticSearch.createIndex(ASSET_GROUP_STATS_INDEX);
 
         var currentDate = TimeHelper.formatYearMonthDay();
-        try (var executor = Executors.newCachedThreadPool()) {
+        var groupsByKind = planAssetGroups(currentDate, assetGroups, unchangedGroups);
+        var countGroups = groupsByKind.get(COUNT_TYPE);
+        var concurrency = Integer.parseInt(
+            ConfigService.get(AssetGroupStats.CONCURRENCY, DEFAULT_CONCURRENCY));
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var fanOut = new GroupFanOut(executor, new Semaphore(concurrency));
+            var useApiCounts = COUNT_SOURCE_API.equalsIgnoreCase(
+                ConfigService.get(AssetGroupStats.COUNT_SOURCE));
+            var groupTypeCounts = useApiCounts ? fetchApiTypeCounts(countGroups, fanOut)
+                : getLocalTypeCounts(dataSource, countGroups, mergeCounts);
+
             var futures = new ArrayList<Future<?>>();
-            futures.add(executor.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    uploadAssetGroupCountStats(currentDate, assetGroups);
-                    return null;
-                }
+            futures.add(executor.submit(() -> {
+                uploadAssetGroupCountStats(currentDate, countGroups, groupTypeCounts);
+                return null;
             }));
 
-            futures.add(executor.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    uploadAssetGroupRuleCompliance(currentDate, assetGroups);
-                    return null;
-                }
+            futures.add(executor.submit(() -> {
+                uploadAssetGroupRuleCompliance(currentDate, groupsByKind.get(ISSUE_COMPLIANCE),
+                    fanOut);
+                return null;
             }));
 
-            futures.add(executor.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    uploadAssetGroupCompliance(currentDate, assetGroups);
-                    return null;
-                }
+            futures.add(executor.submit(() -> {
+                uploadAssetGroupCompliance(currentDate, groupsByKind.get(COMPLIANCE), fanOut);
+                return null;
             }));
 
-            futures.add(executor.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    // NOTE: This is disabled due to
-                    //  1) Taking more than 2 1/2 minutes
-                    //  2) Timing out
-                    // We will re-enable when this API is performing well
-//                    uploadAssetGroupTagCompliance(currentDate, assetGroups);
-                    return null;
-                }
+            futures.add(executor.submit(() -> {
+                uploadAssetGroupTagCompliance(currentDate, groupsByKind.get(TAG_COMPLIANCE),
+                    fanOut);
+                return null;
             }));
 
-            futures.add(executor.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    uploadAssetGroupIssues(currentDate, assetGroups);
-                    return null;
-                }
+            futures.add(executor.submit(() -> {
+                uploadAssetGroupIssues(currentDate, groupsByKind.get(ISSUES), fanOut);
+                return null;
             }));
 
-            futures.add(executor.submit(new Callable() {
-                @Override
-                public Object call() throws Exception {
-                    uploadAssetListCountStats(currentDate, assetGroups);
-                    return null;
+            futures.add(executor.submit(() -> {
+                if (useApiCounts) {
+                    uploadAssetListCountStats(currentDate, countGroups, fanOut);
+                } else {
+                    uploadAssetListCountStats(currentDate, countGroups, groupTypeCounts);
                 }
+                return null;
             }));
 
             futures.forEach(f -> {
@@ -112,56 +172,228 @@ public class AssetGroupStatsCollector {
         LOGGER.info("Finished collecting asset group stats");
     }
 
-    private void uploadAssetGroupCountStats(String currentDate, List<String> assetGroups)
-        throws Exception {
-        var currentInfo = getCurrentCounts(currentDate);
+    /**
+     * Decides which asset groups each kind of stat is collected for. Changed asset groups get
+     * everything, as do the policy kinds; unchanged asset groups only get the asset kinds missing
+     * for today, after carrying forward the previous day's documents. The counts (count_type and
+     * count_asset) share a plan, keyed by count_type.
+     */
+    private Map<String, List<String>> planAssetGroups(String currentDate,
+        List<String> assetGroups, Set<String> unchangedGroups) throws Exception {
+        var unchanged = assetGroups.stream().filter(unchangedGroups::contains).toList();
+        var currentKinds = unchanged.isEmpty() ? Map.<String, Set<String>>of()
+            : getStatKinds(currentDate, unchanged);
+
+        // The unchanged asset groups without today's stats of each kind
+        var missingByKind = new HashMap<String, Set<String>>();
+        for (var kind : CARRIED_FORWARD_KINDS) {
+            missingByKind.put(kind, unchanged.stream().filter(
+                    assetGroup -> !currentKinds.getOrDefault(assetGroup, Set.of()).contains(kind))
+                .collect(Collectors.toSet()));
+        }
+        var carried = carryForward(currentDate, missingByKind);
+
+        var groupsByKind = new HashMap<String, List<String>>();
+        for (var kind : CARRIED_FORWARD_KINDS) {
+            var carriedGroups = carried.getOrDefault(kind, Set.of());
+            groupsByKind.put(kind, assetGroups.stream().filter(
+                assetGroup -> !unchangedGroups.contains(assetGroup) || (
+                    missingByKind.get(kind).contains(assetGroup) && !carriedGroups.contains(
+                        assetGroup))).toList());
+        }
+        POLICY_KINDS.forEach(kind -> groupsByKind.put(kind, assetGroups));
+        groupsByKind.put(COUNT_TYPE, assetGroups.stream().filter(
+            assetGroup -> !unchangedGroups.contains(assetGroup) || !currentKinds.getOrDefault(
+                assetGroup, Set.of()).contains(COUNT_TYPE)).toList());
+
+        if (!unchanged.isEmpty()) {
+            LOGGER.info("{} of {} asset groups are unchanged; collecting {}", unchanged.size(),
+                assetGroups.size(), groupsByKind.entrySet().stream()
+                    .map(entry -> STR."\{entry.getKey()}=\{entry.getValue().size()}").toList());
+        }
+        return groupsByKind;
+    }
+
+    /**
+     * The kinds (docType) of stats each asset group has for the date.
+     */
+    private Map<String, Set<String>> getStatKinds(String date, List<String> assetGroups)
+        throws IOException {
+        var search = STR."""
+            {
+                "size": 0,
+                "query": { "bool": { "must": [ { "match": { "date": "\{date}" } }, { "terms": { "ag.keyword": \{JsonHelper.toJson(
+            assetGroups)} } } ] } },
+                "aggs": {
+                    "groups": {
+                        "terms": { "field": "ag.keyword", "size": \{assetGroups.size()} },
+                        "aggs": { "kinds": { "terms": { "field": "\{AssetDocumentFields.asKeyword(
+            AssetDocumentFields.DOC_TYPE)}", "size": 20 } } }
+                    }
+                }
+            }
+            """.trim();
+        var response = elasticSearch.invokeAndCheck(HttpMethod.POST,
+            STR."\{ASSET_GROUP_STATS_INDEX}/_search?filter_path=aggregations.groups.buckets",
+            search);
+        var statKinds = new HashMap<String, Set<String>>();
+        JsonHelper.objectMapper.readTree(response.getBody()).path("aggregations").path("groups")
+            .path("buckets").forEach(group -> {
+                var kinds = new HashSet<String>();
+                group.path("kinds").path("buckets")
+                    .forEach(kind -> kinds.add(kind.path("key").asText()));
+                statKinds.put(group.path("key").asText(), kinds);
+            });
+        return statKinds;
+    }
+
+    /**
+     * Copies the previous day's documents of each kind to today, for the given asset groups.
+     *
+     * @return - the asset groups carried forward, by kind
+     */
+    private Map<String, Set<String>> carryForward(String currentDate,
+        Map<String, Set<String>> groupsByKind) throws Exception {
+        var allGroups = groupsByKind.values().stream().flatMap(Set::stream).distinct().toList();
+        if (allGroups.isEmpty()) {
+            return Map.of();
+        }
 
+        var previousDate = TimeHelper.formatYearMonthDay(ZonedDateTime.now().minusDays(1));
+        var search = STR."""
+            { "query": { "bool": { "must": [ { "match": { "date": "\{previousDate}" } }, { "terms": { "ag.keyword": \{JsonHelper.toJson(
+            allGroups)} } }, { "terms": { "\{AssetDocumentFields.asKeyword(
+            AssetDocumentFields.DOC_TYPE)}": \{JsonHelper.toJson(groupsByKind.keySet())} } } ] } } }
+            """.trim();
+
+        var carried = new HashMap<String, Set<String>>();
         try (var batch = new ElasticBatch(elasticSearch)) {
-            for (String assetGroup : assetGroups) {
-                var typeCounts = assetCountsHelper.fetchTypeCounts(assetGroup);
-                var current = currentInfo.get(assetGroup);
-                for (var typeCount : typeCounts) {
-                    var type = typeCount.get("type").toString();
-                    long count = Long.parseLong((typeCount.get("count").toString()));
-                    if (current != null) {
-                        long min = count;
-                        long max = count;
-                        var minMax = current.get("type");
-                        if (minMax != null) {
-                            min = Math.min(min, Long.parseLong(minMax.get("min").toString()));
-                            max = Math.max(max, Long.parseLong(minMax.get("max").toString()));
-                        }
-                        Map<String, Object> doc = new HashMap<>();
-                        doc.put("ag", assetGroup);
-                        doc.put("type", type);
-                        doc.put("min", min);
-                        doc.put("max", max);
-                        doc.put("date", currentDate);
-                        doc.put(AssetDocumentFields.DOC_TYPE, "count_type");
-
-                        var id = StringHelper.generateSignature(
-                            STR."\{assetGroup}\{type}\{currentDate}count_type");
-                        doc.put("@id", id);
-                        batch.add(BatchItem.documentEntry(ASSET_GROUP_STATS_INDEX, id, doc));
+            var response = elasticSearch.invokeAndCheck(HttpMethod.POST,
+                STR."\{ASSET_GROUP_STATS_INDEX}/_search?scroll=1m&size=\{CARRY_FORWARD_PAGE_SIZE}",
+                search);
+            var page = JsonHelper.objectMapper.readTree(response.getBody());
+            while (!page.path("hits").path("hits").isEmpty()) {
+                for (var hit : page.path("hits").path("hits")) {
+                    Map<String, Object> doc = JsonHelper.objectMapper.convertValue(
+                        hit.path("_source"), new TypeReference<>() {
+                        });
+                    var assetGroup = String.valueOf(doc.get("ag"));
+                    var kind = String.valueOf(doc.get(AssetDocumentFields.DOC_TYPE));
+                    if (!groupsByKind.getOrDefault(kind, Set.of()).contains(assetGroup)) {
+                        continue;
                     }
+                    doc.put("date", currentDate);
+                    var id = documentId(kind, assetGroup, doc, currentDate);
+                    doc.put("@id", id);
+                    batch.add(BatchItem.documentEntry(ASSET_GROUP_STATS_INDEX, id, doc));
+                    carried.computeIfAbsent(kind, _ -> new HashSet<>()).add(assetGroup);
                 }
+                response = elasticSearch.invokeAndCheck(HttpMethod.POST, "_search/scroll",
+                    STR."{ \"scroll\": \"1m\", \"scroll_id\": \"\{page.path("_scroll_id").asText()}\" }");
+                page = JsonHelper.objectMapper.readTree(response.getBody());
             }
         }
+        LOGGER.info("Carried forward stats from {}: {}", previousDate, carried.entrySet().stream()
+            .map(entry -> STR."\{entry.getKey()}=\{entry.getValue().size()}").toList());
+        return carried;
+    }
+
+    /**
+     * The document id of the stats whose documents are carried forward.
+     */
+    private static String documentId(String kind, String assetGroup, Map<String, ?> doc,
+        String date) {
+        return StringHelper.generateSignature(switch (kind) {
+            case ISSUE_COMPLIANCE -> STR."\{assetGroup}\{doc.get("domain")}\{doc.get(
+                "policyId")}\{date}";
+            // The trailing parenthesis has always been part of the tag compliance id
+            case TAG_COMPLIANCE -> STR."\{assetGroup}tagcompliance\{date})";
+            default -> STR."\{assetGroup}\{kind}\{date}";
+        });
+    }
+
+    /**
+     * The type counts of each asset group. The data source's own asset group uses the counts of
+     * the merge when the calling job merged every type of the data source; the other asset groups
+     * are counted with aggregations over their aliases.
+     */
+    private Map<String, Map<String, Long>> getLocalTypeCounts(String dataSource,
+        List<String> assetGroups, Map<String, Long> mergeCounts) throws IOException {
+        var useMergeCounts = assetGroups.contains(dataSource) && mergeCounts.keySet()
+            .containsAll(assetTypes.getTypes(dataSource));
+        var searchGroups = assetGroups.stream()
+            .filter(assetGroup -> !useMergeCounts || !assetGroup.equals(dataSource)).toList();
+        var groupTypeCounts = new HashMap<>(
+            localAssetCounts.fetchAssetGroupTypeCounts(searchGroups));
+        if (useMergeCounts) {
+            var typeCounts = new HashMap<String, Long>();
+            mergeCounts.forEach((type, count) -> {
+                if (count > 0) {
+                    typeCounts.put(type, count);
+                }
+            });
+            groupTypeCounts.put(dataSource, typeCounts);
+        }
+        return groupTypeCounts;
     }
 
-    private void uploadAssetGroupRuleCompliance(String currentDate, List<String> assetGroups)
-        throws Exception {
+    private Map<String, Map<String, Long>> fetchApiTypeCounts(List<String> assetGroups,
+        GroupFanOut fanOut) throws Exception {
+        var allTypeCounts = fanOut.fetch(assetGroups, assetCountsHelper::fetchTypeCounts);
+        var groupTypeCounts = new HashMap<String, Map<String, Long>>();
+        for (var index = 0; index < assetGroups.size(); index++) {
+            var typeCounts = new HashMap<String, Long>();
+            allTypeCounts.get(index).forEach(typeCount -> typeCounts.put(
+                typeCount.get("type").toString(),
+                Long.parseLong(typeCount.get("count").toString())));
+            groupTypeCounts.put(assetGroups.get(index), typeCounts);
+        }
+        return groupTypeCounts;
+    }
+
+    /**
+     * Writes the day's min and max count of each type in each asset group. The min/max is kept by
+     * a scripted upsert, so the documents written earlier in the day don't need to be read first.
+     */
+    private void uploadAssetGroupCountStats(String currentDate, List<String> assetGroups,
+        Map<String, Map<String, Long>> groupTypeCounts) throws Exception {
         try (var batch = new ElasticBatch(elasticSearch)) {
-            for (String assetGroup : assetGroups) {
-                var docList = assetCountsHelper.fetchPolicyCompliance(assetGroup, domains);
-                docList.parallelStream().forEach(doc -> {
+            for (var assetGroup : assetGroups) {
+                var typeCounts = groupTypeCounts.getOrDefault(assetGroup, Map.of());
+                for (var typeCount : typeCounts.entrySet()) {
+                    var type = typeCount.getKey();
+                    long count = typeCount.getValue();
+                    var id = StringHelper.generateSignature(
+                        STR."\{assetGroup}\{type}\{currentDate}\{COUNT_TYPE}");
+
+                    Map<String, Object> doc = new HashMap<>();
                     doc.put("ag", assetGroup);
+                    doc.put("type", type);
+                    doc.put("min", count);
+                    doc.put("max", count);
                     doc.put("date", currentDate);
-                    var id = StringHelper.generateSignature(
-                        STR."\{assetGroup}\{doc.get("domain")}\{doc.get(
-                            "policyId")}\{currentDate}");
+                    doc.put(AssetDocumentFields.DOC_TYPE, COUNT_TYPE);
                     doc.put("@id", id);
-                    doc.put(AssetDocumentFields.DOC_TYPE, "issuecompliance");
+                    batch.add(BatchItem.upsertEntry(ASSET_GROUP_STATS_INDEX, id, MIN_MAX_SCRIPT,
+                        Map.of("count", count), doc));
+                }
+            }
+        }
+    }
+
+    private void uploadAssetGroupRuleCompliance(String currentDate, List<String> assetGroups,
+        GroupFanOut fanOut) throws Exception {
+        var allDocs = fanOut.fetch(assetGroups,
+            assetGroup -> assetCountsHelper.fetchPolicyCompliance(assetGroup, domains));
+        try (var batch = new ElasticBatch(elasticSearch)) {
+            for (var index = 0; index < assetGroups.size(); index++) {
+                var assetGroup = assetGroups.get(index);
+                var docList = allDocs.get(index);
+                docList.forEach(doc -> {
+                    doc.put("ag", assetGroup);
+                    doc.put("date", currentDate);
+                    doc.put("@id", documentId(ISSUE_COMPLIANCE, assetGroup, doc, currentDate));
+                    doc.put(AssetDocumentFields.DOC_TYPE, ISSUE_COMPLIANCE);
                 });
                 batch.add(docList.stream().map(
                     d -> BatchItem.documentEntry(ASSET_GROUP_STATS_INDEX, d.get("@id").toString(),
@@ -170,18 +402,19 @@ public class AssetGroupStatsCollector {
         }
     }
 
-    private void uploadAssetGroupCompliance(String currentDate, List<String> assetGroups)
-        throws Exception {
+    private void uploadAssetGroupCompliance(String currentDate, List<String> assetGroups,
+        GroupFanOut fanOut) throws Exception {
+        var allDocs = fanOut.fetch(assetGroups,
+            assetGroup -> assetCountsHelper.fetchCompliance(assetGroup, domains));
         try (var batch = new ElasticBatch(elasticSearch)) {
-            for (String assetGroup : assetGroups) {
-                var docList = assetCountsHelper.fetchCompliance(assetGroup, domains);
-                docList.parallelStream().forEach(doc -> {
+            for (var index = 0; index < assetGroups.size(); index++) {
+                var assetGroup = assetGroups.get(index);
+                var docList = allDocs.get(index);
+                docList.forEach(doc -> {
                     doc.put("ag", assetGroup);
                     doc.put("date", currentDate);
-                    var id = StringHelper.generateSignature(
-                        STR."\{assetGroup}compliance\{currentDate}");
-                    doc.put("@id", id);
-                    doc.put(AssetDocumentFields.DOC_TYPE, "compliance");
+                    doc.put("@id", documentId(COMPLIANCE, assetGroup, doc, currentDate));
+                    doc.put(AssetDocumentFields.DOC_TYPE, COMPLIANCE);
                 });
                 batch.add(docList.stream().map(
                     d -> BatchItem.documentEntry(ASSET_GROUP_STATS_INDEX, d.get("@id").toString(),
@@ -190,19 +423,31 @@ public class AssetGroupStatsCollector {
         }
     }
 
-    private void uploadAssetGroupTagCompliance(String currentDate, List<String> assetGroups)
-        throws Exception {
+    /**
+     * Tag compliance is counted with an aggregation over each asset group rather than with the
+     * compliance API, which took minutes for the asset groups of a data source.
+     */
+    private void uploadAssetGroupTagCompliance(String currentDate, List<String> assetGroups,
+        GroupFanOut fanOut) throws Exception {
+        var mandatoryTags = Arrays.stream(
+                ConfigService.get(AssetGroupStats.MANDATORY_TAGS, "").split(","))
+            .map(String::trim).filter(tag -> !tag.isEmpty()).toList();
+        if (mandatoryTags.isEmpty()) {
+            LOGGER.info("There are no mandatory tags; skipping tag compliance");
+            return;
+        }
+        var allDocs = fanOut.fetch(assetGroups,
+            assetGroup -> localAssetCounts.fetchTagCompliance(assetGroup, mandatoryTags));
         try (var batch = new ElasticBatch(elasticSearch)) {
             var docList = new ArrayList<Map<String, Object>>();
-            for (String assetGroup : assetGroups) {
-                var doc = assetCountsHelper.fetchTaggingSummary(assetGroup);
+            for (var index = 0; index < assetGroups.size(); index++) {
+                var assetGroup = assetGroups.get(index);
+                var doc = allDocs.get(index);
                 if (!doc.isEmpty()) {
                     doc.put("ag", assetGroup);
                     doc.put("date", currentDate);
-                    var id = StringHelper.generateSignature(
-                        STR."\{assetGroup}tagcompliance\{currentDate})");
-                    doc.put("@id", id);
-                    doc.put(AssetDocumentFields.DOC_TYPE, "tagcompliance");
+                    doc.put("@id", documentId(TAG_COMPLIANCE, assetGroup, doc, currentDate));
+                    doc.put(AssetDocumentFields.DOC_TYPE, TAG_COMPLIANCE);
                     docList.add(doc);
                 }
             }
@@ -212,18 +457,19 @@ public class AssetGroupStatsCollector {
         }
     }
 
-    private void uploadAssetGroupIssues(String currentDate, List<String> assetGroups)
-        throws Exception {
+    private void uploadAssetGroupIssues(String currentDate, List<String> assetGroups,
+        GroupFanOut fanOut) throws Exception {
+        var allDocs = fanOut.fetch(assetGroups,
+            assetGroup -> assetCountsHelper.fetchIssuesInfo(assetGroup, domains));
         try (var batch = new ElasticBatch(elasticSearch)) {
-            for (String assetGroup : assetGroups) {
-                var docList = assetCountsHelper.fetchIssuesInfo(assetGroup, domains);
-                docList.parallelStream().forEach(doc -> {
+            for (var index = 0; index < assetGroups.size(); index++) {
+                var assetGroup = assetGroups.get(index);
+                var docList = allDocs.get(index);
+                docList.forEach(doc -> {
                     doc.put("ag", assetGroup);
                     doc.put("date", currentDate);
-                    var id = StringHelper.generateSignature(
-                        STR."\{assetGroup}issues\{currentDate}");
-                    doc.put("@id", id);
-                    doc.put(AssetDocumentFields.DOC_TYPE, "issues");
+                    doc.put("@id", documentId(ISSUES, assetGroup, doc, currentDate));
+                    doc.put(AssetDocumentFields.DOC_TYPE, ISSUES);
                 });
 
                 batch.add(docList.stream().map(
@@ -233,11 +479,13 @@ public class AssetGroupStatsCollector {
         }
     }
 
-    private void uploadAssetListCountStats(String currentDate, List<String> assetGroups)
-        throws Exception {
+    private void uploadAssetListCountStats(String currentDate, List<String> assetGroups,
+        GroupFanOut fanOut) throws Exception {
+        var allAssetCounts = fanOut.fetch(assetGroups, assetCountsHelper::fetchAssetCounts);
         try (var batch = new ElasticBatch(elasticSearch)) {
-            for (String assetGroup : assetGroups) {
-                var assetCounts = assetCountsHelper.fetchAssetCounts(assetGroup);
+            for (var index = 0; index < assetGroups.size(); index++) {
+                var assetGroup = assetGroups.get(index);
+                var assetCounts = allAssetCounts.get(index);
                 var doc = new HashMap<String, Object>();
                 doc.put("ag", assetGroup);
                 doc.put("date", currentDate);
@@ -253,44 +501,63 @@ public class AssetGroupStatsCollector {
         }
     }
 
-    private Map<String, Map<String, Map<String, Object>>> getCurrentCounts(String date)
-        throws IOException {
-        var payload = STR."""
-            {
-                "query": {
-                    "bool": {
-                        "must": [
-                            {
-                                "match": {
-                                    "docType": "count_type"
-                                }
-                            },
-                            {
-                                "match": {
-                                    "date": "\{date}"
-                                }
-                            }
-                        ]
-                    }
+    private void uploadAssetListCountStats(String currentDate, List<String> assetGroups,
+        Map<String, Map<String, Long>> groupTypeCounts) throws Exception {
+        try (var batch = new ElasticBatch(elasticSearch)) {
+            for (var assetGroup : assetGroups) {
+                var typeCounts = groupTypeCounts.get(assetGroup);
+                if (typeCounts == null) {
+                    continue;
                 }
+                var doc = new HashMap<String, Object>();
+                doc.put("ag", assetGroup);
+                doc.put("date", currentDate);
+                var id = StringHelper.generateSignature(
+                    STR."\{assetGroup}\\{currentDate}count_asset");
+                doc.put("@id", id);
+                doc.put(AssetDocumentFields.DOC_TYPE, "count_asset");
+                doc.put("typeCount", typeCounts.size());
+                doc.put("totalassets", typeCounts.values().stream().mapToLong(Long::longValue).sum());
+
+                batch.add(BatchItem.documentEntry(ASSET_GROUP_STATS_INDEX, id, doc));
             }
-            """.trim();
-        var response = elasticSearch.invokeCheckAndConvert(ElasticQueryMapResponse.class,
-            HttpMethod.POST, STR."\{ASSET_GROUP_STATS_INDEX}/_search?size=10000", payload);
-        Map<String, Map<String, Map<String, Object>>> infoList = new HashMap<>();
-        var docs = response.hits.hits.stream().map(h -> h.source).toList();
-        for (var doc : docs) {
-            var assetGroup = doc.get("ag").toString();
-            var typeInfo = infoList.get(assetGroup);
-            if (typeInfo == null) {
-                typeInfo = new HashMap<>();
-                infoList.put(assetGroup, typeInfo);
-            }
-            typeInfo.put(doc.get("type").toString(), doc);
-            doc.remove("ag");
-            doc.remove("type");
         }
+    }
+
+    @FunctionalInterface
+    private interface GroupFetcher<T> {
 
-        return infoList;
+        T fetch(String assetGroup) throws Exception;
+    }
+
+    /**
+     * Fetches a value for each asset group concurrently. The permits are shared by every kind of
+     * stat so the total number of asset groups being fetched stays bounded.
+     */
+    private record GroupFanOut(ExecutorService executor, Semaphore permits) {
+
+        <T> List<T> fetch(List<String> assetGroups, GroupFetcher<T> fetcher) throws Exception {
+            var futures = assetGroups.stream().map(assetGroup -> executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return fetcher.fetch(assetGroup);
+                } finally {
+                    permits.release();
+                }
+            })).toList();
+
+            var results = new ArrayList<T>(futures.size());
+            for (var index = 0; index < futures.size(); index++) {
+                try {
+                    results.add(futures.get(index).get());
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw new JobException(
+                        STR."Failed fetching stats for asset group \{assetGroups.get(index)}",
+                        e.getCause());
+                }
+            }
+            return results;
+        }
     }
 }
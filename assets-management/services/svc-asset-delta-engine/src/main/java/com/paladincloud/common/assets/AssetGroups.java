@@ -1,19 +1,26 @@
 package com.paladincloud.common.assets;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.paladincloud.common.aws.DatabaseHelper;
+import com.paladincloud.common.config.ConfigService;
 import com.paladincloud.common.errors.JobException;
 import com.paladincloud.common.search.ElasticAliasResponse;
 import com.paladincloud.common.search.ElasticSearchHelper;
 import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import org.apache.logging.log4j.LogManager;
@@ -26,22 +33,11 @@ public class AssetGroups {
     private static final String ROW_EXISTS = "row_exists";
     private static final String ES_ATTRIBUTE_TAG = "tags.";
     private static final String ES_ATTRIBUTE_KEYWORD = ".keyword";
-    private static final String UPDATE_ALIAS_TEMPLATE = """
-        {
-            "actions": [{
-                "add":
-                    {
-                        %s "index": "%s",
-                        "alias": "%s"
-                    }
-                }
-            ]
-        }
-        """.trim();
-    private static final Map<String, List<Map<String, String>>> databaseCache = new HashMap<>();
-    private static String cacheDataSource = null;
-    private static final List<String> dataSourceCache = new ArrayList<>();
-    private static final Map<String, List<Map<String, String>>> assetGroupTagsCache = new HashMap<>();
+    private static final int MAX_ALIAS_ACTIONS_PER_REQUEST = 100;
+    private static final Duration CACHE_TIME_TO_LIVE = Duration.ofMinutes(15);
+    // The asset group criteria and data sources by tenant; kept across warm invocations.
+    private static final Map<String, CachedCriteria> criteriaCache = new ConcurrentHashMap<>();
+    private static final Map<String, CachedDataSources> dataSourcesCache = new ConcurrentHashMap<>();
     private final ElasticSearchHelper elasticSearch;
     private final DatabaseHelper database;
     private final ObjectMapper objectMapper = new ObjectMapper();
@@ -52,20 +48,7 @@ public class AssetGroups {
         this.database = database;
     }
 
-    private void checkCaches(String newDataSource) {
-        if (cacheDataSource == null) {
-            return;
-        }
-        if (!cacheDataSource.equals(newDataSource)) {
-            cacheDataSource = newDataSource;
-            dataSourceCache.clear();
-            assetGroupTagsCache.clear();
-
-        }
-    }
-
     public void createDefaultGroup(String dataSource) {
-        checkCaches(dataSource);
         try {
             String queryForAllResources = STR."""
                 SELECT EXISTS (SELECT 1 FROM cf_AssetGroupDetails
@@ -87,6 +70,14 @@ public class AssetGroups {
         }
     }
 
+    /**
+     * Brings the asset group aliases on the data source indexes up to date. The current aliases are
+     * fetched once and only the aliases that are missing or whose filter changed are submitted, so
+     * a run that changes nothing doesn't update the cluster state at all.
+     *
+     * @param aliases    - the newly created indexes that triggered the update
+     * @param dataSource - the data source, such as 'aws'
+     */
     public void updateImpactedAliases(List<String> aliases, String dataSource) {
         if (aliases.isEmpty()) {
             return;
@@ -113,9 +104,14 @@ public class AssetGroups {
             return;
         }
 
-        var updatedAssetGroups = new ArrayList<String>();
-        var actions = new ArrayList<String>();
-        var updatedAssetGroupsCount = 0;
+        var userGroupIds = assetGroupsList.stream()
+            .filter(assetGroup -> "user".equalsIgnoreCase(assetGroup.get("groupType")))
+            .map(assetGroup -> assetGroup.get("groupId")).filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        var criteriaByGroupId = getCachedAssetGroupCriteriaOrFetch(userGroupIds);
+
+        // The alias for each asset group along with its filter (null for no filter)
+        var desiredAliases = new LinkedHashMap<String, JsonNode>();
         for (var assetGroup : assetGroupsList) {
             var alias = assetGroup.get("groupName");
             var groupType = assetGroup.get("groupType");
@@ -130,71 +126,117 @@ public class AssetGroups {
 
             if ((existingAliasQuery == null || existingAliasQuery.equalsIgnoreCase("null"))
                 && groupType.equalsIgnoreCase("user")) {
-                var assetGroupTags = getCachedAssetGroupTagsOrFetch(groupId);
+                var assetGroupTags = criteriaByGroupId.getOrDefault(groupId, List.of());
                 if (assetGroupTags.isEmpty()) {
                     LOGGER.error("There are no asset group tags for groupId={}", groupId);
                     continue;
                 }
-                actions.add(
-                    generateStakeholdersAssetGroupAliasQuery(alias, assetGroupTags, dataSource));
-                updatedAssetGroupsCount += 1;
-                updatedAssetGroups.add(alias);
-
+                desiredAliases.put(alias, generateStakeholdersAssetGroupFilter(assetGroupTags));
             } else if (alias.equalsIgnoreCase(ASSET_GROUP_FOR_ALL_SOURCES)
                 || alias.equalsIgnoreCase(dataSource)) {
-                actions.add(String.format(UPDATE_ALIAS_TEMPLATE, "", STR."\{dataSource}_*", alias));
-                updatedAssetGroupsCount += 1;
-                updatedAssetGroups.add(alias);
+                desiredAliases.put(alias, null);
             } else if (groupType.equalsIgnoreCase("user") && existingAliasQuery != null
                 && !existingAliasQuery.equalsIgnoreCase("null") && !alias.equalsIgnoreCase(
                 ASSET_GROUP_FOR_ALL_SOURCES) && !alias.equalsIgnoreCase(dataSource) || (
                 existingAliasQuery != null && existingAliasQuery.contains("_*"))) {
-                var filterContents = getFilterFromExistingAliasQuery(existingAliasQuery);
-                var filter = filterContents.isEmpty() ? "" : STR."\"filter\": \{filterContents},";
-                actions.add(
-                    String.format(UPDATE_ALIAS_TEMPLATE, filter, STR."\{dataSource}_*", alias));
-                updatedAssetGroupsCount += 1;
-                updatedAssetGroups.add(alias);
+                desiredAliases.put(alias, getFilterFromExistingAliasQuery(existingAliasQuery));
             } else {
                 throw new JobException(
                     STR."Unable to update alias \{alias} for existingAliasQuery \{existingAliasQuery}");
             }
         }
 
-        var combinedActions = mergeActions(actions);
-        if (combinedActions == null || combinedActions.toString().isEmpty()) {
-            throw new JobException(STR."Update failed, nothing to do for \{dataSource}");
-        }
-
-        var payload = STR."{ \"actions\": \{combinedActions} }";
         try {
-            var response = elasticSearch.invokeCheckAndConvert(ElasticAliasResponse.class,
-                HttpMethod.POST, "_aliases", payload);
-            if (!response.acknowledged || response.errors) {
-                throw new JobException(STR."Failed creating some aliases: \{response}");
+            var actions = computeAliasActions(getCurrentAliases(STR."\{dataSource}_*"),
+                desiredAliases);
+            if (actions.isEmpty()) {
+                LOGGER.info("Aliases for dataSource={} are up to date ({} asset groups)", dataSource,
+                    desiredAliases.size());
+                return;
             }
+
+            for (var offset = 0; offset < actions.size(); offset += MAX_ALIAS_ACTIONS_PER_REQUEST) {
+                var chunk = objectMapper.createArrayNode().addAll(actions.subList(offset,
+                    Math.min(actions.size(), offset + MAX_ALIAS_ACTIONS_PER_REQUEST)));
+                var payload = objectMapper.createObjectNode().set("actions", chunk);
+                var response = elasticSearch.invokeCheckAndConvert(ElasticAliasResponse.class,
+                    HttpMethod.POST, "_aliases", objectMapper.writeValueAsString(payload));
+                if (!response.acknowledged || response.errors) {
+                    throw new JobException(STR."Failed creating some aliases: \{response}");
+                }
+            }
+            LOGGER.info("Finished updating impacted aliases for indices={} dataSource={}. "
+                    + "Updated {} of {} asset groups: {}", aliases, dataSource, actions.size(),
+                desiredAliases.size(),
+                actions.stream().map(action -> action.path("add").path("alias").asText()).toList());
         } catch (IOException e) {
             throw new JobException(STR."Error updating alias for \{dataSource}", e);
         }
-        LOGGER.info("Finished updating impacted aliases for indices={} dataSource={}. "
-                + "Updated {} asset groups: {}", aliases, dataSource, updatedAssetGroupsCount,
-            updatedAssetGroups);
     }
 
-    private String getFilterFromExistingAliasQuery(String existingAliasQuery) {
+    /**
+     * Gets the aliases, and their filters, of each index matching the pattern.
+     *
+     * @return - index name to alias name to filter (null if the alias has no filter)
+     */
+    private Map<String, Map<String, JsonNode>> getCurrentAliases(String indexPattern)
+        throws IOException {
+        var response = elasticSearch.invokeAndCheck(HttpMethod.GET, STR."\{indexPattern}/_alias",
+            null);
+        var currentAliases = new HashMap<String, Map<String, JsonNode>>();
+        if (response.getBody() != null) {
+            objectMapper.readTree(response.getBody()).fields().forEachRemaining(index -> {
+                var indexAliases = new HashMap<String, JsonNode>();
+                index.getValue().path("aliases").fields().forEachRemaining(
+                    alias -> indexAliases.put(alias.getKey(), alias.getValue().get("filter")));
+                currentAliases.put(index.getKey(), indexAliases);
+            });
+        }
+        return currentAliases;
+    }
+
+    /**
+     * Creates an 'add' action for each alias that's missing from, or has a different filter on, at
+     * least one of the indexes. The action names just those indexes.
+     */
+    private List<JsonNode> computeAliasActions(Map<String, Map<String, JsonNode>> currentAliases,
+        Map<String, JsonNode> desiredAliases) {
+        var actions = new ArrayList<JsonNode>();
+        desiredAliases.forEach((alias, filter) -> {
+            var indices = objectMapper.createArrayNode();
+            currentAliases.forEach((index, indexAliases) -> {
+                if (!indexAliases.containsKey(alias) || !Objects.equals(indexAliases.get(alias),
+                    filter)) {
+                    indices.add(index);
+                }
+            });
+            if (!indices.isEmpty()) {
+                var add = objectMapper.createObjectNode();
+                add.set("indices", indices);
+                add.put("alias", alias);
+                if (filter != null) {
+                    add.set("filter", filter);
+                }
+                actions.add(objectMapper.createObjectNode().set("add", add));
+            }
+        });
+        return actions;
+    }
+
+    private JsonNode getFilterFromExistingAliasQuery(String existingAliasQuery) {
         try {
             JsonNode rootNode = objectMapper.readTree(existingAliasQuery);
             if (rootNode != null && rootNode.has("actions")) {
                 rootNode = rootNode.get("actions");
                 for (JsonNode actionNode : rootNode) {
                     JsonNode addNode = actionNode.path("add");
-                    if (addNode.get("index").isMissingNode() || !addNode.get("index").toString()
+                    if (addNode.path("index").isMissingNode() || !addNode.get("index").toString()
                         .contains("_*")) {
                         continue;
                     }
                     JsonNode filterNode = addNode.get("filter");
                     if (filterNode != null && !filterNode.isMissingNode()) {
-                        return filterNode.toString();
+                        return filterNode;
                     }
                 }
             }
@@ -203,61 +245,79 @@ public class AssetGroups {
                 STR."Error while extracting filter from existingAliasQuery : \{existingAliasQuery}",
                 e);
         }
-        return "";
+        return null;
     }
 
-    private List<Map<String, String>> getCachedAssetGroupTagsOrFetch(String groupId) {
-        if (assetGroupTagsCache.containsKey(groupId)) {
-            return assetGroupTagsCache.get(groupId);
-        } else {
-            var result = database.executeQuery(
-                STR."SELECT attributeName, attributeValue FROM cf_AssetGroupCriteriaDetails WHERE groupId = '\{groupId}'");
-            assetGroupTagsCache.put(groupId, result);
-            return result;
+    /**
+     * Gets the criteria (tags) of every user asset group, loaded with a single query and cached per
+     * tenant. The cache is reloaded when it expires or when it doesn't know one of the given groups,
+     * which happens when a group was created after it was loaded.
+     *
+     * @param groupIds - the user asset groups about to be used
+     * @return - the groupId to its criteria rows (attributeName, attributeValue)
+     */
+    private Map<String, List<Map<String, String>>> getCachedAssetGroupCriteriaOrFetch(
+        Set<String> groupIds) {
+        var tenantId = Objects.requireNonNullElse(ConfigService.getTenantId(), "");
+        var cached = criteriaCache.get(tenantId);
+        if (cached != null && !cached.isExpired() && cached.byGroupId().keySet()
+            .containsAll(groupIds)) {
+            return cached.byGroupId();
         }
+
+        // The left join includes groups without any criteria, so they're known to the cache
+        var rows = database.executeQuery("""
+            SELECT agd.groupId, agcd.attributeName, agcd.attributeValue FROM cf_AssetGroupDetails AS agd
+            LEFT JOIN cf_AssetGroupCriteriaDetails AS agcd ON agcd.groupId = agd.groupId
+            WHERE agd.groupType = 'user'
+            """.trim());
+        var byGroupId = new HashMap<String, List<Map<String, String>>>();
+        rows.forEach(row -> {
+            var criteria = byGroupId.computeIfAbsent(row.get("groupId"), _ -> new ArrayList<>());
+            if (row.get("attributeName") != null) {
+                criteria.add(Map.of("attributeName", row.get("attributeName"), "attributeValue",
+                    Objects.requireNonNullElse(row.get("attributeValue"), "")));
+            }
+        });
+        LOGGER.info("Loaded {} asset group criteria for {} user asset groups", rows.size(),
+            byGroupId.size());
+        criteriaCache.put(tenantId, new CachedCriteria(byGroupId, Instant.now()));
+        return byGroupId;
     }
 
     private List<String> getCachedDataSourcesOrFetch(String dataSource) {
-        if (dataSourceCache.isEmpty()) {
-            dataSourceCache.addAll(getEnabledDataSources(dataSource));
+        var tenantId = Objects.requireNonNullElse(ConfigService.getTenantId(), "");
+        var cached = dataSourcesCache.get(tenantId);
+        if (cached == null || cached.isExpired()) {
+            cached = new CachedDataSources(getEnabledDataSources(), Instant.now());
+            dataSourcesCache.put(tenantId, cached);
         }
-        return dataSourceCache;
+
+        // Assume the current data source is enabled
+        var enabledSources = new LinkedHashSet<>(cached.enabledSources());
+        enabledSources.add(dataSource);
+        return new ArrayList<>(enabledSources);
     }
 
-    private List<String> getEnabledDataSources(String dataSource) {
-        var dataSourceList = getCachedResultOrFetch(
-            "SELECT DISTINCT dataSourceName FROM cf_Target");
-        if (dataSourceList.isEmpty()) {
+    /**
+     * Gets the enabled data sources, checking the '{source}.enabled' flag of every data source with
+     * a single query.
+     */
+    private Set<String> getEnabledDataSources() {
+        var rows = database.executeQuery("""
+            SELECT DISTINCT t.dataSourceName, p.`value` FROM cf_Target AS t
+            LEFT JOIN pac_config_properties AS p ON p.cfkey = CONCAT(t.dataSourceName, '.enabled')
+            """.trim());
+        if (rows.isEmpty()) {
             LOGGER.error("There are NO data sources");
-            return new ArrayList<>();
-        } else {
-            var enabledSources = dataSourceList.stream().map(row -> {
-                // Map to just the data source name
-                return row.get("dataSourceName");
-            }).filter(source -> {
-                var response = getCachedResultOrFetch(
-                    STR."SELECT `value` FROM pac_config_properties WHERE cfkey = '\{source}.enabled'").stream()
-                    .findFirst();
-                return response.isPresent() && response.get().get("value").equals("true");
-            }).collect(Collectors.toSet());
-            if (enabledSources.isEmpty()) {
-                LOGGER.error("There are NO enabled data sources");
-            }
-
-            // Assume the current data source is enabled
-            enabledSources.add(dataSource);
-            return new ArrayList<>(enabledSources);
+            return Set.of();
         }
-    }
-
-    private List<Map<String, String>> getCachedResultOrFetch(String query) {
-        if (databaseCache.containsKey(query)) {
-            return databaseCache.get(query);
-        } else {
-            var response = database.executeQuery(query);
-            databaseCache.put(query, response);
-            return response;
+        var enabledSources = rows.stream().filter(row -> "true".equals(row.get("value")))
+            .map(row -> row.get("dataSourceName")).collect(Collectors.toSet());
+        if (enabledSources.isEmpty()) {
+            LOGGER.error("There are NO enabled data sources");
         }
+        return enabledSources;
     }
 
     private void insertDefaultAssetGroup(String aliasQuery) {
@@ -292,29 +352,15 @@ public class AssetGroups {
             """.trim();
     }
 
-    private String generateStakeholdersAssetGroupAliasQuery(String assetGroup,
-        List<Map<String, String>> assetGroupTags, String dataSource) {
-
-        var tagMap = generateQueryForUserAssetGroup(assetGroupTags);
-        var actions = getCachedDataSourcesOrFetch(dataSource).stream().map(sourceName -> STR."""
-            {
-                "add": {
-                    "index": "\{sourceName.toLowerCase().trim()}",
-                    "alias": "\{assetGroup}",
-                    "filter": {
-                        "bool": \{tagMap}
-                    }
-                }
-            }
-            """.trim());
-        return STR."""
-            {
-                "action": [\{String.join(",", actions.toList())}]
-            }
-            """.trim();
+    private JsonNode generateStakeholdersAssetGroupFilter(
+        List<Map<String, String>> assetGroupTags) {
+        var filter = objectMapper.createObjectNode();
+        filter.set("bool", objectMapper.valueToTree(generateQueryForUserAssetGroup(assetGroupTags)));
+        return filter;
     }
 
-    private String generateQueryForUserAssetGroup(List<Map<String, String>> assetGroupTags) {
+    private Map<String, Object> generateQueryForUserAssetGroup(
+        List<Map<String, String>> assetGroupTags) {
         List<Object> mustList = new ArrayList<>();
         Map<String, Object> mustObj = new HashMap<>();
         Map<String, List<String>> groupedTags = assetGroupTags.stream().collect(
@@ -323,11 +369,7 @@ public class AssetGroups {
         groupedTags.forEach((tagName, tags) -> mustList.add(
             generateShouldMapForStakeholderAssetGroup(tagName, tags)));
         mustObj.put("must", mustList);
-        try {
-            return objectMapper.writeValueAsString(mustObj);
-        } catch (JsonProcessingException e) {
-            throw new JobException("Failed converting JSON to string", e);
-        }
+        return mustObj;
     }
 
     private Map<String, Object> generateShouldMapForStakeholderAssetGroup(String tagName,
@@ -356,29 +398,18 @@ public class AssetGroups {
         }
     }
 
-    private JsonNode mergeActions(List<String> jsonStrings) {
-        List<JsonNode> actionsList = new ArrayList<>();
-        for (String jsonString : jsonStrings) {
-            try {
-                JsonNode jsonObj = objectMapper.readTree(jsonString);
-                if (jsonObj.has("actions")) {
-                    JsonNode actions = jsonObj.get("actions");
-                    actionsList.addAll(convertToList(actions));
-                }
-            } catch (Exception e) {
-                throw new JobException(STR."Error merging actions (\{jsonString})", e);
-            }
+    private record CachedCriteria(Map<String, List<Map<String, String>>> byGroupId,
+                                  Instant loadedAt) {
+
+        boolean isExpired() {
+            return loadedAt.plus(CACHE_TIME_TO_LIVE).isBefore(Instant.now());
         }
-        return objectMapper.valueToTree(actionsList);
     }
 
-    private List<JsonNode> convertToList(JsonNode node) {
-        List<JsonNode> list = new ArrayList<>();
-        if (node.isArray()) {
-            node.forEach(list::add);
-        } else {
-            list.add(node);
+    private record CachedDataSources(Set<String> enabledSources, Instant loadedAt) {
+
+        boolean isExpired() {
+            return loadedAt.plus(CACHE_TIME_TO_LIVE).isBefore(Instant.now());
         }
-        return list;
     }
 }
@@ -2,6 +2,7 @@ package com.paladincloud.common.assets;
 
 import com.paladincloud.common.search.ElasticBatch.BatchItem;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -9,6 +10,12 @@ public interface AssetRepository {
 
     Map<String, AssetDTO> getAssets(String indexName, boolean latestOnly, List<String> filters);
 
+    /**
+     * The assets of one partition of the index; all of them when the partition is null.
+     */
+    Map<String, AssetDTO> getAssets(String indexName, boolean latestOnly, List<String> filters,
+        TypePartition partition);
+
     void deleteAssetsWithoutValue(String indexName, String docType, String fieldName,
         String fieldValue) throws IOException;
 
@@ -20,10 +27,41 @@ public interface AssetRepository {
     void processLoadErrors(String indexName, String type, String loadDate,
         Map<String, List<Map<String, Object>>> typeToError) throws IOException;
 
+    /**
+     * Sets the load date of the latest documents of a type, and of its supporting type documents,
+     * without otherwise changing them.
+     *
+     * @return - the number of documents updated
+     */
+    long refreshLoadDate(String indexName, String type, List<String> supportingDocTypes,
+        String loadDate) throws IOException;
+
+    /**
+     * The fingerprints of the types that have one.
+     */
+    Map<String, TypeFingerprint> getTypeFingerprints(String dataSource, Collection<String> types)
+        throws IOException;
+
+    void saveTypeFingerprint(String dataSource, String type, TypeFingerprint fingerprint)
+        throws IOException;
+
+    void deleteTypeFingerprint(String dataSource, String type) throws IOException;
+
     Batch createBatch();
 
     void createIndex(String index) throws IOException;
 
+    /**
+     * Prepares the indexes for a large bulk load by disabling refresh and, optionally, replicas.
+     * Closing the returned instance restores the previous settings and refreshes the indexes.
+     */
+    BulkLoad startBulkLoad(List<String> indexNames, boolean disableReplicas) throws IOException;
+
+    interface BulkLoad extends AutoCloseable {
+
+        void close() throws IOException;
+    }
+
     interface Batch extends AutoCloseable {
 
         void add(BatchItem batchData) throws IOException;
@@ -0,0 +1,127 @@
+package com.paladincloud.common.assets;
+
+import com.paladincloud.common.errors.JobException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Collects the asset group stats and account asset counts of one or more data sources of a
+ * tenant. This runs after the processing done event has been sent, so it's off the path of asset
+ * state evaluation and the policy engine.
+ * <p></p>
+ * Requests are coalesced: an asset group shared by several data sources (such as a user asset
+ * group) is collected once per run, and an asset group or data source whose stats were collected
+ * after a request was made is skipped, since that collection already saw the request's assets.
+ * The collection times are kept across warm invocations.
+ * <p></p>
+ * When the requests say what changed, asset groups without changed indexes behind them are
+ * passed to the collector as unchanged, and only the accounts with changed assets are counted.
+ */
+@Singleton
+public class AssetStats {
+
+    private static final Logger LOGGER = LogManager.getLogger(AssetStats.class);
+
+    // 'tenant/asset group' and 'tenant/data source' to the time the last collection started
+    private static final Map<String, Long> collectionStarts = new ConcurrentHashMap<>();
+
+    private final DataSourceHelper dataSourceHelper;
+    private final AssetGroupStatsCollector assetGroupStatsCollector;
+    private final AssetCounts assetCounts;
+    private final AssetCountsHelper assetCountsHelper;
+
+    @Inject
+    public AssetStats(DataSourceHelper dataSourceHelper,
+        AssetGroupStatsCollector assetGroupStatsCollector, AssetCounts assetCounts,
+        AssetCountsHelper assetCountsHelper) {
+        this.dataSourceHelper = dataSourceHelper;
+        this.assetGroupStatsCollector = assetGroupStatsCollector;
+        this.assetCounts = assetCounts;
+        this.assetCountsHelper = assetCountsHelper;
+    }
+
+    /**
+     * Collects the stats of the data sources, skipping whatever has been collected since the
+     * request was made.
+     *
+     * @param tenantId    - the tenant
+     * @param dataSources - the data sources whose assets changed, such as 'aws'
+     * @param requestedAt - when the stats were requested, in epoch milliseconds
+     * @param changes     - what changed in the runs that requested the stats; null if unknown,
+     *                    in which case every asset group and account is considered changed
+     * @param mergeCounts - the active asset count of each type merged by the job collecting the
+     *                    stats of its one data source (see Assets.getMergeCounts); empty when the
+     *                    stats are collected apart from the merge
+     */
+    public void collect(String tenantId, List<String> dataSources, long requestedAt,
+        AssetChanges changes, Map<String, Long> mergeCounts) {
+        // Identical API requests are made once per collection
+        try {
+            collectDataSources(tenantId, dataSources, requestedAt, changes, mergeCounts);
+        } finally {
+            assetCountsHelper.clearResponses();
+        }
+    }
+
+    private void collectDataSources(String tenantId, List<String> dataSources, long requestedAt,
+        AssetChanges changes, Map<String, Long> mergeCounts) {
+        var collectedGroups = new LinkedHashSet<String>();
+        for (var dataSource : dataSources) {
+            var dataSourceKey = STR."\{tenantId}/\{dataSource}";
+            if (isCollectedSince(dataSourceKey, requestedAt)) {
+                LOGGER.info("Stats for {} were collected since the request, skipping", dataSource);
+                continue;
+            }
+
+            var startTime = System.currentTimeMillis();
+            try {
+                var dataSourceInfo = dataSourceHelper.fetch(dataSource);
+                var assetGroups = dataSourceInfo.assetGroups().stream()
+                    .filter(assetGroup -> !collectedGroups.contains(assetGroup))
+                    .filter(assetGroup -> !isCollectedSince(STR."\{tenantId}/\{assetGroup}",
+                        requestedAt))
+                    .toList();
+                LOGGER.info("Collecting stats for {}: {} of {} asset groups", dataSource,
+                    assetGroups.size(), dataSourceInfo.assetGroups().size());
+                assetGroupStatsCollector.collectStats(dataSource, assetGroups,
+                    getUnchangedGroups(assetGroups, dataSourceInfo.groupIndices(), changes),
+                    mergeCounts);
+                assetCounts.populate(dataSource, dataSourceInfo.accountIds(),
+                    changes == null ? null : changes.affectedAccounts());
+
+                collectedGroups.addAll(assetGroups);
+                assetGroups.forEach(
+                    assetGroup -> collectionStarts.put(STR."\{tenantId}/\{assetGroup}",
+                        startTime));
+                collectionStarts.put(dataSourceKey, startTime);
+            } catch (Exception e) {
+                throw new JobException(STR."Error populating asset stats for \{dataSource}", e);
+            }
+        }
+    }
+
+    /**
+     * The asset groups without any changed index behind them.
+     */
+    private static Set<String> getUnchangedGroups(List<String> assetGroups,
+        Map<String, Set<String>> groupIndices, AssetChanges changes) {
+        if (changes == null) {
+            return Set.of();
+        }
+        return assetGroups.stream().filter(assetGroup -> groupIndices.containsKey(assetGroup)
+            && !changes.isChanged(groupIndices.get(assetGroup))).collect(Collectors.toSet());
+    }
+
+    private static boolean isCollectedSince(String key, long requestedAt) {
+        var collectionStart = collectionStarts.get(key);
+        return collectionStart != null && collectionStart >= requestedAt;
+    }
+}
@@ -6,9 +6,14 @@ import com.paladincloud.common.AssetDocumentFields;
 import com.paladincloud.common.assets.FilesAndTypes.SupportingType;
 import com.paladincloud.common.aws.DatabaseHelper;
 import com.paladincloud.common.config.AssetTypes;
+import com.paladincloud.common.config.ConfigConstants.Elastic;
+import com.paladincloud.common.config.ConfigConstants.Mapper;
 import com.paladincloud.common.config.ConfigConstants.S3;
 import com.paladincloud.common.config.ConfigService;
 import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.jobs.TimeBudget;
+import com.paladincloud.common.mapper.MapperFile;
+import com.paladincloud.common.mapper.MapperPrefetcher;
 import com.paladincloud.common.mapper.MapperRepository;
 import com.paladincloud.common.search.ElasticBatch.BatchItem;
 import com.paladincloud.common.util.JsonHelper;
@@ -20,12 +25,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -33,11 +43,26 @@ public class Assets {
 
     private static final Logger LOGGER = LogManager.getLogger(Assets.class);
     private static final String DATA_SHIPPER_INDEX = "datashipper";
+    private static final String DEFAULT_BULK_LOAD_MIN_DOCUMENTS = "10000";
+    private static final String DEFAULT_PREFETCH_DEPTH = "2";
+    private static final String DEFAULT_PREFETCH_MEMORY_MB = "128";
+    private static final String DEFAULT_TIME_BUDGET_RESERVE_SECONDS = "60";
+    private static final String DEFAULT_ESTIMATED_MB_PER_SECOND = "2";
     private final AssetTypes assetTypes;
     private final AssetRepository assetRepository;
     private final MapperRepository mapperRepository;
     private final DatabaseHelper databaseHelper;
     private final AssetStateHelper assetStateHelper;
+    // What the last process call changed, for the stats collection
+    private AssetChanges changes = AssetChanges.empty();
+    // The active asset count of each type merged (whole) by the last process call
+    private Map<String, Long> mergeCounts = new HashMap<>();
+    // The types left unprocessed because the time budget ran low
+    private final Set<String> remainingTypes = new LinkedHashSet<>();
+    // The mapper files listed to estimate the type sizes, which the following process call of the
+    // same path uses rather than listing them again
+    private String listedMapperPath;
+    private Map<String, MapperFile> listedFiles;
 
     @Inject
     public Assets(AssetRepository assetRepository, AssetTypes assetTypes,
@@ -50,10 +75,34 @@ public class Assets {
         this.assetStateHelper = assetStateHelper;
     }
 
-    private List<Map<String, Object>> fetchMapperFiles(String bucket, String path,
+    /**
+     * The types (indexes) with new, missing or re-tagged assets and the accounts of those assets,
+     * over everything processed by the last process call.
+     */
+    public AssetChanges getChanges() {
+        return changes;
+    }
+
+    /**
+     * The number of active assets of each type the last process call merged, for the stats
+     * collected by the same job; types processed in part or skipped as unchanged have none.
+     */
+    public Map<String, Long> getMergeCounts() {
+        return mergeCounts;
+    }
+
+    /**
+     * The types the last process call stopped short of, as the time budget ran low; empty when
+     * everything was processed.
+     */
+    public Set<String> getRemainingTypes() {
+        return remainingTypes;
+    }
+
+    private List<Map<String, Object>> fetchMapperFiles(MapperPrefetcher prefetcher, String path,
         String dataSource, String type) {
         try {
-            return mapperRepository.fetchFile(bucket, path);
+            return prefetcher.fetch(path);
         } catch (IOException e) {
             throw new JobException(
                 STR."Exception fetching asset data for \{dataSource} from \{type}; path=\{path}",
@@ -61,13 +110,68 @@ public class Assets {
         }
     }
 
+    /**
+     * Estimates the size of each type's data from the size of its mapper files (the type file and
+     * its supporting type files).
+     *
+     * @param dataSource - the data source
+     * @param mapperPath - the path of the mapper files
+     * @return - the estimated size in bytes, by type
+     */
+    public Map<String, Long> estimateTypeSizes(String dataSource, String mapperPath) {
+        var bucket = ConfigService.get(S3.BUCKET_NAME);
+        var fileDetails = mapperRepository.listFileDetails(bucket, mapperPath);
+        listedMapperPath = mapperPath;
+        listedFiles = fileDetails;
+        var fileTypes = FilesAndTypes.matchFilesAndTypes(fileDetails.keySet().stream().toList(),
+            assetTypes.getTypes(dataSource));
+        var typeSizes = new HashMap<String, Long>();
+        fileTypes.typeFiles.forEach(
+            (type, filename) -> typeSizes.merge(type, fileDetails.get(filename).size(),
+                Long::sum));
+        fileTypes.supportingTypes.forEach((type, supportingTypes) -> supportingTypes.forEach(
+            supportingType -> typeSizes.merge(type,
+                fileDetails.get(supportingType.filePath).size(), Long::sum)));
+        return typeSizes;
+    }
+
+    private Map<String, MapperFile> listFileDetails(String bucket, String mapperPath) {
+        var fileDetails = mapperPath.equals(listedMapperPath) ? listedFiles
+            : mapperRepository.listFileDetails(bucket, mapperPath);
+        listedMapperPath = null;
+        listedFiles = null;
+        return fileDetails;
+    }
+
+    /**
+     * Merges the mapper files of each type into its index. Types are processed one at a time, each
+     * started only if the time budget allows for it: its estimated time, plus a reserve for the
+     * done event. The estimate scales the size of the type's mapper files by the throughput of the
+     * types merged so far (or a configured throughput, for the first). Only a first type too large
+     * for even a whole budget is started regardless. Types that aren't started are available from
+     * getRemainingTypes.
+     *
+     * @param skippedTypes   - the types not processed here, such as those done by an earlier
+     *                       invocation or those of other work units
+     * @param partition      - when set, only the assets of this partition of the types are
+     *                       processed; null to process the types whole
+     * @param timeBudget     - the time left to the job
+     * @return - the types processed by this call
+     */
     public Set<String> process(String dataSource, String mapperPath, boolean isOpinion,
-        String reportingSource, String reportingSourceService, String reportingServiceDisplayName) {
+        String reportingSource, String reportingSourceService, String reportingServiceDisplayName,
+        Set<String> skippedTypes, TypePartition partition, TimeBudget timeBudget) {
+
+        // The instance is shared by the records of an invocation, so nothing carries over
+        remainingTypes.clear();
+        changes = AssetChanges.empty();
+        mergeCounts = new HashMap<>();
 
         var bucket = ConfigService.get(S3.BUCKET_NAME);
         var featureSuspiciousAssetsEnabled = ConfigService.get(
             "feature_flags.enableSuspiciousAssets", "true").equalsIgnoreCase("true");
-        var allFilenames = mapperRepository.listFiles(bucket, mapperPath);
+        var fileDetails = listFileDetails(bucket, mapperPath);
+        var allFilenames = fileDetails.keySet().stream().sorted().toList();
         var types = assetTypes.getTypesWithDisplayName(dataSource);
         var fileTypes = FilesAndTypes.matchFilesAndTypes(allFilenames, types.keySet());
         if (!fileTypes.unknownFiles.isEmpty()) {
@@ -91,29 +195,75 @@ public class Assets {
 
         var startTime = ZonedDateTime.now();
         var typeToError = loadTypeErrors(bucket, fileTypes.loadErrors);
-        try (var batchIndexer = assetRepository.createBatch()) {
+        // A partition covers only part of a type, so it's never skipped as unchanged
+        var fingerprints = isOpinion || partition != null ? Map.<String, String>of()
+            : getTypeFingerprints(dataSource, mapperPath, types, fileTypes, fileDetails,
+                typeToError);
+        var previousFingerprints = getPreviousFingerprints(dataSource, fingerprints.keySet());
+        var unchangedTypes = fingerprints.keySet().stream().filter(
+            type -> previousFingerprints.containsKey(type) && previousFingerprints.get(type)
+                .fingerprint().equals(fingerprints.get(type))).collect(Collectors.toSet());
+        var reserveMillis = Long.parseLong(ConfigService.get(Mapper.TIME_BUDGET_RESERVE_SECONDS,
+            DEFAULT_TIME_BUDGET_RESERVE_SECONDS)) * 1000;
+        var processedTypes = new LinkedHashSet<String>();
+        // The mapper file bytes and time of the types merged so far, for the estimates
+        var mergedBytes = new AtomicLong();
+        var mergedMillis = new AtomicLong();
+        var unfetchedTypes = new HashSet<>(unchangedTypes);
+        unfetchedTypes.addAll(skippedTypes);
+        try (var batchIndexer = assetRepository.createBatch();
+            var prefetcher = createPrefetcher(dataSource, bucket, fileTypes, fileDetails,
+                unfetchedTypes, partition)) {
             fileTypes.typeFiles.forEach((type, filename) -> {
+                if (skippedTypes.contains(type)) {
+                    return;
+                }
+                var typeBytes = getTypeFilePaths(fileTypes, type).stream()
+                    .mapToLong(path -> fileDetails.get(path).size()).sum()
+                    / (partition == null ? 1 : partition.count());
+                var neededMillis = reserveMillis + (unchangedTypes.contains(type) ? 0
+                    : estimateTypeMillis(typeBytes, mergedBytes.get(), mergedMillis.get()));
+                var neverFits = processedTypes.isEmpty()
+                    && neededMillis >= timeBudget.limitMillis();
+                if (!remainingTypes.isEmpty() || (!neverFits
+                    && !timeBudget.hasTimeFor(neededMillis))) {
+                    remainingTypes.add(type);
+                    return;
+                }
+                var typeStartTime = System.currentTimeMillis();
                 try {
+                    if (unchangedTypes.contains(type)) {
+                        refreshUnchangedType(dataSource, type,
+                            fileTypes.supportingTypes.getOrDefault(type, Collections.emptyList()),
+                            previousFingerprints.get(type), startTime, batchIndexer);
+                        processedTypes.add(type);
+                        return;
+                    }
+                    // The type is reprocessed; until it succeeds it doesn't match any run
+                    if (previousFingerprints.containsKey(type) || partition != null) {
+                        assetRepository.deleteTypeFingerprint(dataSource, type);
+                    }
+
                     var displayName = types.get(type);
                     var indexName = StringHelper.indexName(dataSource, type);
 
-                    var latestAssets = fetchMapperFiles(bucket, filename, dataSource, type);
+                    var latestAssets = fetchMapperFiles(prefetcher, filename, dataSource, type);
                     String primaryIndexName;
                     Map<String, AssetDTO> existingPrimaryAssets = null;
                     if (isOpinion) {
                         primaryIndexName = StringHelper.indexName(dataSource, type);
                         existingPrimaryAssets = assetRepository.getAssets(primaryIndexName, true,
-                            Collections.emptyList());
+                            Collections.emptyList(), partition);
                         indexName = StringHelper.opinionIndexName(dataSource, type);
-                        assetTypes.ensureOpinionIndexExists(dataSource, type);
+                        assetTypes.ensureOpinionIndexTemplate(dataSource);
 
                     } else {
                         primaryIndexName = null;
                     }
 
                     var existingAssets = assetRepository.getAssets(indexName, !isOpinion,
-                        Collections.emptyList());
-                    var tags = (fileTypes.tagFiles.containsKey(type)) ? fetchMapperFiles(bucket,
+                        Collections.emptyList(), partition);
+                    var tags = (fileTypes.tagFiles.containsKey(type)) ? fetchMapperFiles(prefetcher,
                         fileTypes.tagFiles.get(type), dataSource, type)
                         : new ArrayList<Map<String, Object>>();
 
@@ -128,8 +278,12 @@ public class Assets {
                             + "assets fetched from ElasticSearch", dataSource, type, latestAssets.size(),
                         tags.size(), existingAssets.size());
 
-                    var docIdFields = Arrays.stream(
-                        assetTypes.getKeyForType(dataSource, type).split(",")).toList();
+                    if (partition != null) {
+                        LOGGER.info("{}/{}: processing partition {}", dataSource, type,
+                            partition);
+                    }
+
+                    var docIdFields = getDocIdFields(dataSource, type);
                     var idColumn = assetTypes.getIdForType(dataSource, type);
 
                     // Merge stored assets and mapped assets
@@ -160,69 +314,112 @@ public class Assets {
                         mergeResponse.getUpdatedPrimaryAssets().size(),
                         mergeResponse.getDeletedPrimaryAssets().size());
 
-                    String finalIndexName = indexName;
-                    mergeResponse.getDeletedOpinionAssets().forEach(value -> {
-                        try {
-                            batchIndexer.add(
-                                BatchItem.deleteEntry(finalIndexName, value.getDocId())
-                            );
-                        } catch (IOException e) {
-                            throw new JobException("Failed batching item for delete", e);
+                    if (!isOpinion) {
+                        // Assets that weren't reported stay latest unless they were marked missing;
+                        // keyed by docId, as a new asset may also be one of the existing assets
+                        var activeAssets = new HashMap<String, AssetDTO>();
+                        existingAssets.forEach((docId, asset) -> {
+                            if (!mergeResponse.getMissingAssets().containsKey(docId)) {
+                                activeAssets.put(asset.getDocId(), asset);
+                            }
+                        });
+                        mergeResponse.getNewAssets().values()
+                            .forEach(asset -> activeAssets.put(asset.getDocId(), asset));
+                        // A partition's count is only part of the type's
+                        if (partition == null) {
+                            mergeCounts.put(type, (long) activeAssets.size());
                         }
-                    });
 
-                    // Persist any stub primary documents that were created
-                    if (primaryIndexName != null) {
-                        if (featureSuspiciousAssetsEnabled) {
-                            mergeResponse.getDeletedPrimaryAssets().forEach(value -> {
-                                try {
-                                    batchIndexer.add(
-                                        BatchItem.deleteEntry(primaryIndexName, value.getDocId())
-                                    );
-                                } catch (IOException e) {
-                                    throw new JobException("Failed batching item for delete", e);
-                                }
-                            });
-                        }
+                        var changedAssets = new ArrayList<AssetDTO>(
+                            mergeResponse.getNewAssets().values());
+                        changedAssets.addAll(mergeResponse.getMissingAssets().values());
+                        changedAssets.addAll(mergeResponse.getRetaggedAssets().values());
+                        changes.add(indexName, changedAssets);
                     }
 
-                    // Each document needs to be updated, regardless of which state it is in
-                    mergeResponse.getExistingAssets().values().forEach(value -> {
-                        try {
-                            batchIndexer.add(
-                                BatchItem.documentEntry(finalIndexName, value.getDocId(),
-                                    JsonHelper.toJson(value)));
-                        } catch (IOException e) {
-                            throw new JobException("Failed converting asset to JSON", e);
+                    // Writes are flushed and made visible (when bulk loading) before the load
+                    // errors and supporting types, which query what was just written.
+                    var bulkLoadIndices = primaryIndexName == null ? List.of(indexName)
+                        : List.of(indexName, primaryIndexName);
+                    // The partitions of a type share its indexes, so none of them changes the
+                    // index settings for a bulk load
+                    var bulkLoadDocuments = partition == null ? latestAssets.size() : 0;
+                    try (var _ = startBulkLoad(bulkLoadIndices, bulkLoadDocuments)) {
+                        String finalIndexName = indexName;
+                        mergeResponse.getDeletedOpinionAssets().forEach(value -> {
+                            try {
+                                batchIndexer.add(
+                                    BatchItem.deleteEntry(finalIndexName, value.getDocId())
+                                );
+                            } catch (IOException e) {
+                                throw new JobException("Failed batching item for delete", e);
+                            }
+                        });
+
+                        // Persist any stub primary documents that were created
+                        if (primaryIndexName != null) {
+                            if (featureSuspiciousAssetsEnabled) {
+                                mergeResponse.getDeletedPrimaryAssets().forEach(value -> {
+                                    try {
+                                        batchIndexer.add(
+                                            BatchItem.deleteEntry(primaryIndexName, value.getDocId())
+                                        );
+                                    } catch (IOException e) {
+                                        throw new JobException("Failed batching item for delete", e);
+                                    }
+                                });
+                            }
                         }
-                    });
 
-                    if (featureSuspiciousAssetsEnabled) {
-                        mergeResponse.getExistingPrimaryAssets().values().forEach(value -> {
+                        // Each document needs to be updated, regardless of which state it is in
+                        mergeResponse.getExistingAssets().values().forEach(value -> {
                             try {
                                 batchIndexer.add(
-                                    BatchItem.documentEntry(primaryIndexName, value.getDocId(),
+                                    BatchItem.documentEntry(finalIndexName, value.getDocId(),
                                         JsonHelper.toJson(value)));
                             } catch (IOException e) {
                                 throw new JobException("Failed converting asset to JSON", e);
                             }
                         });
-                    }
 
-                    var stats = generateStats(startTime, dataSource, type, latestAssets.size(),
-                        mergeResponse.getNewAssets().size());
-                    batchIndexer.add(
-                        BatchItem.documentEntry(DATA_SHIPPER_INDEX, UUID.randomUUID().toString(),
-                            JsonHelper.toJson(stats)));
+                        if (featureSuspiciousAssetsEnabled) {
+                            mergeResponse.getExistingPrimaryAssets().values().forEach(value -> {
+                                try {
+                                    batchIndexer.add(
+                                        BatchItem.documentEntry(primaryIndexName, value.getDocId(),
+                                            JsonHelper.toJson(value)));
+                                } catch (IOException e) {
+                                    throw new JobException("Failed converting asset to JSON", e);
+                                }
+                            });
+                        }
+
+                        var stats = generateStats(startTime, dataSource, type, latestAssets.size(),
+                            mergeResponse.getNewAssets().size());
+                        batchIndexer.add(
+                            BatchItem.documentEntry(DATA_SHIPPER_INDEX, UUID.randomUUID().toString(),
+                                JsonHelper.toJson(stats)));
 
-                    batchIndexer.flush();
+                        batchIndexer.flush();
+                    }
 
                     var loadDate = TimeHelper.formatZeroSeconds(startTime);
                     assetRepository.processLoadErrors(indexName, type, loadDate, typeToError);
 
-                    uploadSupportingTypes(dataSource, indexName, bucket,
-                        fileTypes.supportingTypes.getOrDefault(type, Collections.emptyList()),
-                        loadDate);
+                    // Supporting types aren't partitioned; the first partition uploads them
+                    if (partition == null || partition.index() == 0) {
+                        uploadSupportingTypes(dataSource, indexName, prefetcher,
+                            fileTypes.supportingTypes.getOrDefault(type, Collections.emptyList()),
+                            loadDate);
+                    }
+
+                    if (fingerprints.containsKey(type)) {
+                        assetRepository.saveTypeFingerprint(dataSource, type,
+                            new TypeFingerprint(fingerprints.get(type), latestAssets.size()));
+                    }
+                    processedTypes.add(type);
+                    mergedBytes.addAndGet(typeBytes);
+                    mergedMillis.addAndGet(System.currentTimeMillis() - typeStartTime);
                 } catch (Exception e) {
                     batchIndexer.cancel();
                     throw new JobException(
@@ -233,8 +430,176 @@ public class Assets {
             throw new JobException(STR."Exception inserting asset data for \{dataSource}", e);
         }
 
-        LOGGER.info("Finished processing asset data for {}", dataSource);
-        return fileTypes.typeFiles.keySet();
+        if (!remainingTypes.isEmpty()) {
+            LOGGER.info(
+                "Stopped processing asset data for {} with {}ms left; processed={} remaining={}",
+                dataSource, timeBudget.remainingMillis(), processedTypes, remainingTypes);
+        } else {
+            LOGGER.info("Finished processing asset data for {}", dataSource);
+        }
+        return processedTypes;
+    }
+
+    /**
+     * The mapper files of a type, in the order they're processed: the type's file, then its tags
+     * and supporting type files.
+     */
+    private static List<String> getTypeFilePaths(FilesAndTypes fileTypes, String type) {
+        var filePaths = new ArrayList<String>();
+        filePaths.add(fileTypes.typeFiles.get(type));
+        if (fileTypes.tagFiles.containsKey(type)) {
+            filePaths.add(fileTypes.tagFiles.get(type));
+        }
+        fileTypes.supportingTypes.getOrDefault(type, Collections.emptyList())
+            .forEach(supportingType -> filePaths.add(supportingType.filePath));
+        return filePaths;
+    }
+
+    /**
+     * When enabled, fingerprints each type from the ETag and size of its mapper files and the
+     * configuration the merge depends on. Types with load errors aren't fingerprinted, as the
+     * errors need to be applied.
+     *
+     * @return - the fingerprint of each type that has one
+     */
+    private Map<String, String> getTypeFingerprints(String dataSource, String mapperPath,
+        Map<String, String> types, FilesAndTypes fileTypes, Map<String, MapperFile> fileDetails,
+        Map<String, List<Map<String, Object>>> typeToError) {
+        if (!"true".equalsIgnoreCase(ConfigService.get(Mapper.SKIP_UNCHANGED_TYPES))
+            || typeToError.containsKey("all")) {
+            return Map.of();
+        }
+
+        var fingerprints = new HashMap<String, String>();
+        for (var type : fileTypes.typeFiles.keySet()) {
+            if (typeToError.containsKey(type)) {
+                continue;
+            }
+            var parts = new ArrayList<String>();
+            parts.add(String.join("|", types.get(type),
+                assetTypes.getKeyForType(dataSource, type),
+                assetTypes.getIdForType(dataSource, type),
+                assetTypes.getResourceNameType(dataSource, type),
+                String.valueOf(assetStateHelper.get(dataSource, type)),
+                String.valueOf(ConfigService.isFeatureEnabled("enableAssetStateService"))));
+            var filePaths = getTypeFilePaths(fileTypes, type);
+            if (filePaths.stream().anyMatch(path -> fileDetails.get(path).eTag() == null)) {
+                continue;
+            }
+            // Each run has a path of its own, so only the file names are compared
+            filePaths.forEach(path -> {
+                var file = fileDetails.get(path);
+                var name = StringUtils.removeStart(StringUtils.removeStart(path, mapperPath), "/");
+                parts.add(STR."\{name}|\{file.eTag()}|\{file.size()}");
+            });
+            fingerprints.put(type, StringHelper.generateSignature(String.join("\n", parts)));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * The time a type's merge is expected to take, from the size of its mapper files.
+     *
+     * @param typeBytes    - the size of the type's mapper files, as stored
+     * @param mergedBytes  - the size of the mapper files merged so far
+     * @param mergedMillis - the time the merges so far took
+     */
+    private static long estimateTypeMillis(long typeBytes, long mergedBytes, long mergedMillis) {
+        if (mergedBytes > 0 && mergedMillis > 0) {
+            return typeBytes * mergedMillis / mergedBytes;
+        }
+        var bytesPerSecond = Long.parseLong(ConfigService.get(Mapper.ESTIMATED_MB_PER_SECOND,
+            DEFAULT_ESTIMATED_MB_PER_SECOND)) * 1024 * 1024;
+        return typeBytes * 1000 / bytesPerSecond;
+    }
+
+    private Map<String, TypeFingerprint> getPreviousFingerprints(String dataSource,
+        Set<String> types) {
+        if (types.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            return assetRepository.getTypeFingerprints(dataSource, types);
+        } catch (IOException e) {
+            throw new JobException(STR."Exception fetching type fingerprints for \{dataSource}", e);
+        }
+    }
+
+    /**
+     * The fast path for a type whose mapper files and configuration haven't changed since it was
+     * last processed: its assets are as they were, so only their load date is moved forward.
+     */
+    private void refreshUnchangedType(String dataSource, String type,
+        List<SupportingType> supportingTypes, TypeFingerprint fingerprint, ZonedDateTime startTime,
+        AssetRepository.Batch batchIndexer) throws IOException {
+        var indexName = StringHelper.indexName(dataSource, type);
+        var supportingDocTypes = supportingTypes.stream()
+            .map(supportingType -> STR."\{supportingType.parentType}_\{supportingType.supportingType}")
+            .toList();
+        var updated = assetRepository.refreshLoadDate(indexName, type, supportingDocTypes,
+            TimeHelper.formatZeroSeconds(startTime));
+        LOGGER.info("{}/{}: mapper files are unchanged; refreshed the load date of {} documents",
+            dataSource, type, updated);
+
+        var stats = generateStats(startTime, dataSource, type, fingerprint.documentCount(), 0);
+        batchIndexer.add(BatchItem.documentEntry(DATA_SHIPPER_INDEX, UUID.randomUUID().toString(),
+            JsonHelper.toJson(stats)));
+        batchIndexer.flush();
+    }
+
+    private List<String> getDocIdFields(String dataSource, String type) {
+        return Arrays.stream(assetTypes.getKeyForType(dataSource, type).split(",")).toList();
+    }
+
+    /**
+     * Fetches the mapper files ahead of their use, in the order they're processed. The files of
+     * unchanged and skipped types aren't fetched at all. For a partition, only the records of the
+     * partition are kept from the type files, and the supporting type files are fetched only by
+     * the first partition.
+     */
+    private MapperPrefetcher createPrefetcher(String dataSource, String bucket,
+        FilesAndTypes fileTypes, Map<String, MapperFile> files, Set<String> skippedTypes,
+        TypePartition partition) {
+        var filePaths = new ArrayList<String>();
+        var filters = new HashMap<String, Predicate<Map<String, Object>>>();
+        fileTypes.typeFiles.keySet().stream().filter(type -> !skippedTypes.contains(type))
+            .forEach(type -> {
+                var typeFilePaths = getTypeFilePaths(fileTypes, type);
+                if (partition == null) {
+                    filePaths.addAll(typeFilePaths);
+                    return;
+                }
+                filePaths.addAll(partition.index() == 0 ? typeFilePaths
+                    : typeFilePaths.subList(0, fileTypes.tagFiles.containsKey(type) ? 2 : 1));
+                var docIdHelper = AssetDocumentHelper.builder().dataSource(dataSource).type(type)
+                    .docIdFields(getDocIdFields(dataSource, type)).build();
+                filters.put(fileTypes.typeFiles.get(type),
+                    document -> partition.contains(docIdHelper.buildDocId(document)));
+            });
+        var depth = Integer.parseInt(
+            ConfigService.get(Mapper.PREFETCH_DEPTH, DEFAULT_PREFETCH_DEPTH));
+        var memoryBudget = Long.parseLong(
+            ConfigService.get(Mapper.PREFETCH_MEMORY_MB, DEFAULT_PREFETCH_MEMORY_MB)) * 1024 * 1024;
+        return new MapperPrefetcher(mapperRepository, bucket, filePaths, files, depth,
+            memoryBudget, filters);
+    }
+
+    /**
+     * When enabled, disables refresh (and optionally replicas) on the indexes for the duration of
+     * the bulk writes of a large type. The returned instance restores the settings and refreshes
+     * the indexes when closed.
+     */
+    private AssetRepository.BulkLoad startBulkLoad(List<String> indexNames, int documentCount)
+        throws IOException {
+        var minDocuments = Integer.parseInt(
+            ConfigService.get(Elastic.BULK_LOAD_MIN_DOCUMENTS, DEFAULT_BULK_LOAD_MIN_DOCUMENTS));
+        if (!"true".equalsIgnoreCase(ConfigService.get(Elastic.BULK_LOAD))
+            || documentCount < minDocuments) {
+            return () -> {
+            };
+        }
+        return assetRepository.startBulkLoad(indexNames,
+            "true".equalsIgnoreCase(ConfigService.get(Elastic.BULK_LOAD_DISABLE_REPLICAS)));
     }
 
     private String accountIdToName(String accountId) {
@@ -272,8 +637,9 @@ public class Assets {
             documentCount, newlyDiscovered);
     }
 
-    private void uploadSupportingTypes(String dataSource, String indexName, String bucket,
-        List<SupportingType> supportingTypes, String loadDate) throws IOException {
+    private void uploadSupportingTypes(String dataSource, String indexName,
+        MapperPrefetcher prefetcher, List<SupportingType> supportingTypes, String loadDate)
+        throws IOException {
         if (supportingTypes.isEmpty()) {
             return;
         }
@@ -284,7 +650,7 @@ public class Assets {
                 assetTypes.getKeyForType(dataSource, firstSupportingType.parentType).split(","))
             .toList();
         for (var supportingType : supportingTypes) {
-            var documents = fetchMapperFiles(bucket, supportingType.filePath, dataSource,
+            var documents = fetchMapperFiles(prefetcher, supportingType.filePath, dataSource,
                 supportingType.fullType);
 
             LOGGER.info("Processing supporting type: parent={} type={} path={} count={}",
@@ -0,0 +1,24 @@
+package com.paladincloud.common.assets;
+
+import java.util.Set;
+
+/**
+ * Tracks the work units of fanned out runs, so the done event and stats request are sent once,
+ * when the last unit of a run finishes.
+ */
+public interface CompletionTracker {
+
+    /**
+     * Records a finished unit. Recording the same unit again (such as when its message is
+     * redelivered) has no further effect.
+     *
+     * @param unit    - the finished unit
+     * @param types   - the types the unit processed
+     * @param changes - what the unit changed
+     * @return - the types and changes of the whole run if this completed it, otherwise null. Only
+     * one caller gets the completion of a run.
+     */
+    Completion complete(WorkUnit unit, Set<String> types, AssetChanges changes);
+
+    record Completion(Set<String> types, AssetChanges changes) {}
+}
@@ -5,8 +5,10 @@ import com.paladincloud.common.aws.DatabaseHelper;
 import com.paladincloud.common.search.ElasticSearchHelper;
 import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -28,10 +30,11 @@ public class DataSourceHelper {
     }
 
     public DataSourceInfo fetch(String dataSource) throws IOException {
-        var assetGroups = getVisibleAssetGroups(getAliases(dataSource).stream().toList());
+        var aliasIndices = getAliasIndices(dataSource);
+        var assetGroups = getVisibleAssetGroups(aliasIndices.keySet().stream().toList());
         var accounts = getAccounts(dataSource);
         LOGGER.info("There are {} asset groups and {} accounts", assetGroups.size(), accounts.size());
-        return new DataSourceInfo(accounts, assetGroups);
+        return new DataSourceInfo(accounts, assetGroups, aliasIndices);
     }
 
     private List<String> getVisibleAssetGroups(List<String> filter) {
@@ -48,18 +51,26 @@ public class DataSourceHelper {
         return result.stream().map(r -> r.get("accountId")).toList();
     }
 
-    private Set<String> getAliases(String dataSource) throws IOException {
+    /**
+     * The aliases of the data source's indexes, each with the names of the indexes behind it. An
+     * index replaced by a split index is behind the alias too, under its original name (which is
+     * now an alias of the split index).
+     */
+    private Map<String, Set<String>> getAliasIndices(String dataSource) throws IOException {
         var result = elasticSearch.invokeAndCheck(HttpMethod.GET,
             STR."/_alias?filter_path=\{dataSource}_*.aliases", null);
         var root = objectMapper.readTree(result.getBody());
-        var uniqueAliases = new HashSet<String>();
+        var aliasIndices = new HashMap<String, Set<String>>();
         root.fields().forEachRemaining(item -> {
-            var aliases = item.getValue().path("aliases");
-            for (var it = aliases.fields(); it.hasNext(); ) {
-                var alias = it.next();
-                uniqueAliases.add(alias.getKey());
-            }
+            var indexNames = new HashSet<String>();
+            indexNames.add(item.getKey());
+            item.getValue().path("aliases").fieldNames().forEachRemaining(indexNames::add);
+            indexNames.forEach(alias -> {
+                if (!alias.equals(item.getKey())) {
+                    aliasIndices.computeIfAbsent(alias, _ -> new HashSet<>()).addAll(indexNames);
+                }
+            });
         });
-        return uniqueAliases;
+        return aliasIndices;
     }
-}
\ No newline at end of file
+}
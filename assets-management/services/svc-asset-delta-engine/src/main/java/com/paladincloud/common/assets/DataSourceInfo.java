@@ -1,8 +1,16 @@
 package com.paladincloud.common.assets;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
-public record DataSourceInfo(List<String> accountIds, List<String> assetGroups) {
+/**
+ * @param accountIds   - the configured accounts of the data source
+ * @param assetGroups  - the visible asset groups aliased to the data source's indexes
+ * @param groupIndices - each asset group (alias) to the names of the indexes behind it
+ */
+public record DataSourceInfo(List<String> accountIds, List<String> assetGroups,
+                             Map<String, Set<String>> groupIndices) {
 
 }
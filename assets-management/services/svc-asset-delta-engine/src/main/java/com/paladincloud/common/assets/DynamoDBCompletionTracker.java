@@ -0,0 +1,122 @@
+package com.paladincloud.common.assets;
+
+import com.paladincloud.common.aws.AwsClients;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Tracks the units of a run in a DynamoDB item (keyed by 'run_id'). Each finished unit adds its
+ * index, types and changes to the item's sets, which makes recording a unit idempotent; the unit
+ * that brings the completed units up to the count then claims the run with a conditional write,
+ * so only one unit ever gets the completion. Items expire (through 'expires_at', if TTL is enabled
+ * on the table) after a week.
+ */
+public class DynamoDBCompletionTracker implements CompletionTracker {
+
+    private static final Logger LOGGER = LogManager.getLogger(DynamoDBCompletionTracker.class);
+    private static final String RUN_ID = "run_id";
+    private static final String COMPLETED_UNITS = "completed_units";
+    private static final String UNIT_COUNT = "unit_count";
+    private static final String ASSET_TYPES = "asset_types";
+    private static final String CHANGED_INDICES = "changed_indices";
+    private static final String AFFECTED_ACCOUNTS = "affected_accounts";
+    // Set once a unit doesn't know its affected accounts, which makes those of the run unknown
+    private static final String ACCOUNTS_UNKNOWN = "accounts_unknown";
+    private static final String DONE_CLAIMED = "done_claimed";
+    private static final String EXPIRES_AT = "expires_at";
+    private static final Duration EXPIRATION = Duration.ofDays(7);
+
+    private final String region;
+    private final String tableName;
+
+    public DynamoDBCompletionTracker(String region, String tableName) {
+        this.region = region;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public Completion complete(WorkUnit unit, Set<String> types, AssetChanges changes) {
+        var client = AwsClients.dynamoDb(region, null);
+        var key = Map.of(RUN_ID, AttributeValue.builder().s(unit.runId()).build());
+
+        // DynamoDB doesn't allow empty sets, so only what the unit has is added
+        var additions = new ArrayList<String>();
+        var values = new HashMap<String, AttributeValue>();
+        addSet(additions, values, COMPLETED_UNITS, Set.of(String.valueOf(unit.index())));
+        addSet(additions, values, ASSET_TYPES, types);
+        addSet(additions, values, CHANGED_INDICES, changes.changedIndices());
+        var assignments = new ArrayList<>(List.of(STR."\{UNIT_COUNT} = :\{UNIT_COUNT}",
+            STR."\{EXPIRES_AT} = :\{EXPIRES_AT}"));
+        if (changes.affectedAccounts() == null) {
+            assignments.add(STR."\{ACCOUNTS_UNKNOWN} = :\{ACCOUNTS_UNKNOWN}");
+            values.put(STR.":\{ACCOUNTS_UNKNOWN}", AttributeValue.builder().bool(true).build());
+        } else {
+            addSet(additions, values, AFFECTED_ACCOUNTS, changes.affectedAccounts());
+        }
+        values.put(STR.":\{UNIT_COUNT}", number(unit.count()));
+        values.put(STR.":\{EXPIRES_AT}",
+            number(System.currentTimeMillis() / 1000 + EXPIRATION.toSeconds()));
+
+        var recorded = client.updateItem(UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(key)
+            .updateExpression(STR."ADD \{String.join(", ", additions)} SET \{String.join(", ", assignments)}")
+            .expressionAttributeValues(values)
+            .returnValues(ReturnValue.ALL_NEW)
+            .build()).attributes();
+        var completedUnits = recorded.get(COMPLETED_UNITS).ss().size();
+        LOGGER.info("Work unit {}/{} of run {} is done; {} units are done", unit.index() + 1,
+            unit.count(), unit.runId(), completedUnits);
+        if (completedUnits < unit.count()) {
+            return null;
+        }
+
+        try {
+            var claimed = client.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(key)
+                .updateExpression(STR."SET \{DONE_CLAIMED} = :\{DONE_CLAIMED}")
+                .conditionExpression(STR."attribute_not_exists(\{DONE_CLAIMED})")
+                .expressionAttributeValues(Map.of(STR.":\{DONE_CLAIMED}",
+                    AttributeValue.builder().bool(true).build()))
+                .returnValues(ReturnValue.ALL_NEW)
+                .build()).attributes();
+            var accountsUnknown = claimed.containsKey(ACCOUNTS_UNKNOWN);
+            return new Completion(getSet(claimed, ASSET_TYPES),
+                new AssetChanges(getSet(claimed, CHANGED_INDICES),
+                    accountsUnknown ? null : getSet(claimed, AFFECTED_ACCOUNTS)));
+        } catch (ConditionalCheckFailedException _) {
+            LOGGER.info("Run {} was already completed by another unit", unit.runId());
+            return null;
+        }
+    }
+
+    private static void addSet(List<String> additions, Map<String, AttributeValue> values,
+        String name, Set<String> set) {
+        if (set.isEmpty()) {
+            return;
+        }
+        additions.add(STR."\{name} :\{name}");
+        values.put(STR.":\{name}", AttributeValue.builder().ss(set).build());
+    }
+
+    private static AttributeValue number(long value) {
+        return AttributeValue.builder().n(String.valueOf(value)).build();
+    }
+
+    private static Set<String> getSet(Map<String, AttributeValue> item, String name) {
+        var value = item.get(name);
+        return value == null || !value.hasSs() ? new HashSet<>() : new HashSet<>(value.ss());
+    }
+}
@@ -1,21 +1,40 @@
 package com.paladincloud.common.assets;
 
+import com.paladincloud.common.AssetDocumentFields;
+import com.paladincloud.common.config.ConfigConstants.Elastic;
+import com.paladincloud.common.config.ConfigService;
 import com.paladincloud.common.search.ElasticBatch;
+import com.paladincloud.common.search.ElasticBulkLoad;
 import com.paladincloud.common.search.ElasticSearchHelper;
 import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
 import com.paladincloud.common.search.ElasticSearchUpdateByQueryResponse;
 import com.paladincloud.common.util.JsonHelper;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.client.ResponseException;
 
 public class ElasticAssetRepository implements AssetRepository {
 
     private static final Logger LOGGER = LogManager.getLogger(ElasticAssetRepository.class);
+    // Join relations by host/index/type; this lives across warm invocations. Other invocations
+    // (and index recreation) change the mappings too, so the mapping version determines whether
+    // an entry is still valid.
+    private static final Map<String, CachedRelations> relationsCache = new ConcurrentHashMap<>();
+    // One document per data source and type, see TypeFingerprint
+    private static final String FINGERPRINT_INDEX = "asset_fingerprints";
+    private static final String REFRESH_LOAD_DATE_SCRIPT = STR."""
+        if (ctx._source.containsKey('\{AssetDocumentFields.LOAD_DATE}')) { ctx._source['\{AssetDocumentFields.LOAD_DATE}'] = params.loadDate; }
+        if (ctx._source.containsKey('\{AssetDocumentFields.LEGACY_LOAD_DATE}')) { ctx._source['\{AssetDocumentFields.LEGACY_LOAD_DATE}'] = params.loadDate; }
+        """.trim();
     private final ElasticSearchHelper elasticSearch;
 
     public ElasticAssetRepository(ElasticSearchHelper elasticSearch) {
@@ -27,6 +46,12 @@ public class ElasticAssetRepository implements AssetRepository {
         return elasticSearch.getAssets(indexName, latestOnly, filters);
     }
 
+    @Override
+    public Map<String, AssetDTO> getAssets(String indexName, boolean latestOnly,
+        List<String> filters, TypePartition partition) {
+        return elasticSearch.getAssets(indexName, latestOnly, filters, partition);
+    }
+
     @Override
     public void deleteAssetsWithoutValue(String indexName, String docType, String fieldName,
         String fieldValue) throws IOException {
@@ -36,19 +61,67 @@ public class ElasticAssetRepository implements AssetRepository {
     @Override
     public Map<String, Object> getTypeRelations(String indexName, String parentType)
         throws IOException {
-        var response = elasticSearch.invokeAndCheck(HttpMethod.GET, STR."\{indexName}/_mapping",
-            null);
-        var document = JsonHelper.objectMapper.readTree(response.getBody());
-        var relations = document.at(
-            STR."/\{indexName}/mappings/properties/\{parentType}_relations/relations");
-
-        @SuppressWarnings("unchecked")
-        Map<String, Object> result = JsonHelper.objectMapper.convertValue(relations, Map.class);
+        // The mapping version is far cheaper to retrieve than the mapping itself; only re-fetch
+        // the relations if the mapping changed since they were cached. It's read before the
+        // relations, so a change in between only makes the entry look stale.
+        var cacheKey = relationsCacheKey(indexName, parentType);
+        var mappingVersion = elasticSearch.getMappingVersion(indexName);
+        var cached = relationsCache.get(cacheKey);
+        if (cached != null && mappingVersion != null
+            && mappingVersion.equals(cached.mappingVersion())) {
+            return new HashMap<>(cached.relations());
+        }
+
+        var relationsPath = STR."\{parentType}_relations.relations";
+        var response = elasticSearch.invokeAndCheck(HttpMethod.GET,
+            STR."\{indexName}/_mapping?filter_path=*.mappings.properties.\{relationsPath}", null);
+        Map<String, Object> result = new HashMap<>();
+        if (response.getBody() != null) {
+            var indices = JsonHelper.objectMapper.readTree(response.getBody()).elements();
+            if (indices.hasNext()) {
+                var relations = indices.next()
+                    .at(STR."/mappings/properties/\{parentType}_relations/relations");
+                if (!relations.isMissingNode()) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> converted = JsonHelper.objectMapper.convertValue(relations,
+                        Map.class);
+                    result.putAll(converted);
+                }
+            }
+        }
+
+        if (mappingVersion != null) {
+            relationsCache.put(cacheKey, new CachedRelations(mappingVersion, Map.copyOf(result)));
+        }
         return result;
     }
 
+    /**
+     * Updates the relations. When the update fails, such as when the relations were changed
+     * elsewhere and the update would remove one, it's retried once on top of the current
+     * relations. The cached relations are dropped either way; the update changes the mapping
+     * version, which can't be read without racing other writers.
+     */
     @Override
     public void updateTypeRelations(String indexName, String parentType,
+        Map<String, Object> relations) throws IOException {
+        var cacheKey = relationsCacheKey(indexName, parentType);
+        try {
+            putTypeRelations(indexName, parentType, relations);
+        } catch (IOException e) {
+            relationsCache.remove(cacheKey);
+            var current = getTypeRelations(indexName, parentType);
+            relations.forEach((parent, children) -> current.merge(parent, children,
+                ElasticAssetRepository::mergeRelations));
+            LOGGER.warn("Failed updating type relations for {}; retrying with {}", parentType,
+                current, e);
+            putTypeRelations(indexName, parentType, current);
+        } finally {
+            relationsCache.remove(cacheKey);
+        }
+    }
+
+    private void putTypeRelations(String indexName, String parentType,
         Map<String, Object> relations) throws IOException {
         var asString = JsonHelper.toJson(relations);
         var payload = STR."""
@@ -65,6 +138,25 @@ public class ElasticAssetRepository implements AssetRepository {
         elasticSearch.invokeAndCheck(HttpMethod.PUT, STR."\{indexName}/_mapping", payload);
     }
 
+    /**
+     * The children of a parent in both relations; each is either a single type or a list of them.
+     */
+    private static Object mergeRelations(Object existing, Object added) {
+        var children = new LinkedHashSet<String>();
+        for (var value : List.of(existing, added)) {
+            if (value instanceof Collection<?> collection) {
+                collection.forEach(child -> children.add(child.toString()));
+            } else {
+                children.add(value.toString());
+            }
+        }
+        return new ArrayList<>(children);
+    }
+
+    private static String relationsCacheKey(String indexName, String parentType) {
+        return STR."\{ConfigService.get(Elastic.HOST)}/\{indexName}/\{parentType}";
+    }
+
     public void processLoadErrors(String indexName, String type, String loadDate,
         Map<String, List<Map<String, Object>>> typeToError) throws IOException {
         if (typeToError.containsKey(type) || typeToError.containsKey("all")) {
@@ -149,10 +241,88 @@ public class ElasticAssetRepository implements AssetRepository {
 
         var response = elasticSearch.invokeCheckAndConvert(ElasticSearchUpdateByQueryResponse.class,
             HttpMethod.POST,
-            STR."\{indexName}/_update_by_query", query.toString());
+            STR."\{indexName}/_update_by_query?ignore_unavailable=true", query.toString());
+        return response.updated;
+    }
+
+    @Override
+    public long refreshLoadDate(String indexName, String type, List<String> supportingDocTypes,
+        String loadDate) throws IOException {
+        var latestOfType = Map.of("bool", Map.of("must", List.of(
+            Map.of("term", Map.of(AssetDocumentFields.asKeyword(AssetDocumentFields.LEGACY_DOC_TYPE),
+                type)),
+            Map.of("term", Map.of(AssetDocumentFields.LEGACY_IS_LATEST, true)))));
+        var should = new ArrayList<Object>(List.of(latestOfType));
+        if (!supportingDocTypes.isEmpty()) {
+            should.add(Map.of("terms",
+                Map.of(AssetDocumentFields.asKeyword(AssetDocumentFields.DOC_TYPE),
+                    supportingDocTypes)));
+            should.add(Map.of("terms",
+                Map.of(AssetDocumentFields.asKeyword(AssetDocumentFields.LEGACY_DOC_TYPE),
+                    supportingDocTypes)));
+        }
+        var request = Map.of(
+            "script", Map.of("lang", "painless", "source", REFRESH_LOAD_DATE_SCRIPT,
+                "params", Map.of("loadDate", loadDate)),
+            "query", Map.of("bool", Map.of("should", should, "minimum_should_match", 1)));
+        var response = elasticSearch.invokeCheckAndConvert(ElasticSearchUpdateByQueryResponse.class,
+            HttpMethod.POST, STR."\{indexName}/_update_by_query", JsonHelper.toJson(request));
         return response.updated;
     }
 
+    @Override
+    public Map<String, TypeFingerprint> getTypeFingerprints(String dataSource,
+        Collection<String> types) throws IOException {
+        var idToType = new HashMap<String, String>();
+        types.forEach(type -> idToType.put(fingerprintId(dataSource, type), type));
+        if (idToType.isEmpty()) {
+            return Map.of();
+        }
+        var request = Map.of("size", idToType.size(),
+            "query", Map.of("ids", Map.of("values", idToType.keySet())));
+        var response = elasticSearch.invokeAndCheck(HttpMethod.POST,
+            STR."\{FINGERPRINT_INDEX}/_search?ignore_unavailable=true&filter_path=hits.hits._id,hits.hits._source",
+            JsonHelper.toJson(request));
+
+        var fingerprints = new HashMap<String, TypeFingerprint>();
+        if (response.getBody() != null) {
+            for (var hit : JsonHelper.objectMapper.readTree(response.getBody())
+                .path("hits").path("hits")) {
+                var type = idToType.get(hit.path("_id").asText());
+                if (type != null) {
+                    fingerprints.put(type, JsonHelper.objectMapper.treeToValue(hit.path("_source"),
+                        TypeFingerprint.class));
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    @Override
+    public void saveTypeFingerprint(String dataSource, String type, TypeFingerprint fingerprint)
+        throws IOException {
+        elasticSearch.invokeAndCheck(HttpMethod.PUT,
+            STR."\{FINGERPRINT_INDEX}/_doc/\{fingerprintId(dataSource, type)}",
+            JsonHelper.toJson(fingerprint));
+    }
+
+    @Override
+    public void deleteTypeFingerprint(String dataSource, String type) throws IOException {
+        try {
+            elasticSearch.invokeAndCheck(HttpMethod.DELETE,
+                STR."\{FINGERPRINT_INDEX}/_doc/\{fingerprintId(dataSource, type)}", null);
+        } catch (ResponseException e) {
+            // Neither the fingerprint nor the index need exist
+            if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+                throw e;
+            }
+        }
+    }
+
+    private static String fingerprintId(String dataSource, String type) {
+        return STR."\{dataSource}_\{type}";
+    }
+
     @Override
     public Batch createBatch() {
         return new ElasticBatch(elasticSearch);
@@ -162,4 +332,14 @@ public class ElasticAssetRepository implements AssetRepository {
     public void createIndex(String index) throws IOException {
         elasticSearch.createIndex(index);
     }
+
+    @Override
+    public BulkLoad startBulkLoad(List<String> indexNames, boolean disableReplicas)
+        throws IOException {
+        return ElasticBulkLoad.start(elasticSearch, indexNames, disableReplicas);
+    }
+
+    private record CachedRelations(String mappingVersion, Map<String, Object> relations) {
+
+    }
 }
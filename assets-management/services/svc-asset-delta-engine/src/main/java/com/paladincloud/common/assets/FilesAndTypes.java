@@ -1,5 +1,6 @@
 package com.paladincloud.common.assets;
 
+import com.paladincloud.common.mapper.MapperFiles;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -25,17 +26,19 @@ public class FilesAndTypes {
         Set<String> primaryTypes) {
         var ft = new FilesAndTypes();
         for (var filename : allFilenames) {
-            if (filename.toLowerCase().endsWith("-loaderror.data")) {
+            // Compressed and binary files ('aws-ec2.data.smile.gz') are matched by their plain name
+            var dataPath = MapperFiles.dataPath(filename);
+            if (dataPath.toLowerCase().endsWith("-loaderror.data")) {
                 ft.loadErrors.add(filename);
                 continue;
             }
-            var primaryType = getPrimaryTypeFromPath(filename);
-            var fullType = getFullTypeFromPath(filename);
-            if (isTagsFile(filename)) {
+            var primaryType = getPrimaryTypeFromPath(dataPath);
+            var fullType = getFullTypeFromPath(dataPath);
+            if (isTagsFile(dataPath)) {
                 ft.tagFiles.put(fullType, filename);
-            } else if (isTypeFile(fullType, filename, primaryTypes)) {
+            } else if (isTypeFile(fullType, dataPath, primaryTypes)) {
                 ft.typeFiles.put(fullType, filename);
-            } else if (isSupportingTypeFile(primaryType, filename, primaryTypes)) {
+            } else if (isSupportingTypeFile(primaryType, dataPath, primaryTypes)) {
                 ft.supportingFiles.put(fullType, filename);
                 var list = ft.supportingTypes.getOrDefault(primaryType, new ArrayList<>());
                 var supportingType = getSupportingType(fullType);
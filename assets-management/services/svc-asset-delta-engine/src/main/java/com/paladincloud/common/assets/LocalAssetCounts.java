@@ -0,0 +1,187 @@
+package com.paladincloud.common.assets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.paladincloud.common.AssetDocumentFields;
+import com.paladincloud.common.search.ElasticSearchHelper;
+import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
+import com.paladincloud.common.util.JsonHelper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Computes asset counts locally rather than asking the Paladin asset API, which queries the same
+ * indexes through the asset group aliases.
+ * <p></p>
+ * The type counts of asset groups come from aggregations over the asset group aliases, so the
+ * alias filters of user asset groups apply; the searches for every asset group are sent together
+ * with _msearch. The data source's own asset group instead uses the counts of the merge when the
+ * stats are collected by the job that merged it (see Assets.getMergeCounts).
+ */
+@Singleton
+public class LocalAssetCounts {
+
+    private static final Logger LOGGER = LogManager.getLogger(LocalAssetCounts.class);
+    private static final int MAX_SEARCHES_PER_REQUEST = 100;
+    private static final int MAX_TYPES = 1000;
+    private static final int ACCOUNTS_PER_PAGE = 1000;
+    // The same assets the asset API counts: the latest version of each entity
+    private static final String ACTIVE_ASSETS_QUERY = STR."""
+        { "bool": { "must": [ { "term": { "\{AssetDocumentFields.LEGACY_IS_LATEST}": true } }, { "term": { "\{AssetDocumentFields.LEGACY_IS_ENTITY}": "true" } } ] } }
+        """.trim();
+    private static final String TYPE_FIELD = AssetDocumentFields.asKeyword(
+        AssetDocumentFields.LEGACY_DOC_TYPE);
+    private static final String ACCOUNT_FIELD = AssetDocumentFields.asKeyword(
+        AssetDocumentFields.LEGACY_ACCOUNT_ID);
+
+    private final ElasticSearchHelper elasticSearch;
+
+    @Inject
+    public LocalAssetCounts(ElasticSearchHelper elasticSearch) {
+        this.elasticSearch = elasticSearch;
+    }
+
+    /**
+     * Counts the active assets of each type in each of the asset groups.
+     *
+     * @param assetGroups - the asset groups (aliases)
+     * @return - the asset group to its type counts; an asset group that couldn't be searched has no
+     * entry
+     * @throws IOException - Network failures as well as HTTP errors
+     */
+    public Map<String, Map<String, Long>> fetchAssetGroupTypeCounts(List<String> assetGroups)
+        throws IOException {
+        var search = STR."""
+            {"size": 0, "query": \{ACTIVE_ASSETS_QUERY}, "aggs": { "types": { "terms": { "field": "\{TYPE_FIELD}", "size": \{MAX_TYPES} } } } }
+            """.trim();
+
+        var results = new HashMap<String, Map<String, Long>>();
+        for (var offset = 0; offset < assetGroups.size(); offset += MAX_SEARCHES_PER_REQUEST) {
+            var chunk = assetGroups.subList(offset,
+                Math.min(assetGroups.size(), offset + MAX_SEARCHES_PER_REQUEST));
+            var body = new StringBuilder();
+            for (var assetGroup : chunk) {
+                body.append(STR."{\"index\": \"\{assetGroup}\", \"ignore_unavailable\": true}\n");
+                body.append(search).append('\n');
+            }
+
+            var response = elasticSearch.invokeAndCheck(HttpMethod.POST,
+                "_msearch?filter_path=responses.error.type,responses.aggregations.types.buckets",
+                body.toString());
+            var responses = JsonHelper.objectMapper.readTree(response.getBody())
+                .path("responses");
+            for (var index = 0; index < chunk.size(); index++) {
+                var assetGroup = chunk.get(index);
+                var groupResponse = responses.path(index);
+                if (groupResponse.has("error")) {
+                    LOGGER.error("Failed counting assets in asset group {}: {}", assetGroup,
+                        groupResponse.path("error"));
+                    continue;
+                }
+                results.put(assetGroup, toCounts(
+                    groupResponse.path("aggregations").path("types").path("buckets")));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Counts the active assets of every account in the indexes behind the alias, paging through a
+     * composite aggregation rather than counting each account separately.
+     *
+     * @param alias - the alias (or index pattern) to count in, such as 'aws'
+     * @return - the account id to its active asset count; accounts without assets have no entry
+     * @throws IOException - Network failures as well as HTTP errors
+     */
+    public Map<String, Long> fetchAccountCounts(String alias) throws IOException {
+        var accountCounts = new HashMap<String, Long>();
+        String afterKey = null;
+        do {
+            var after = afterKey == null ? "" : STR.", \"after\": \{afterKey}";
+            var search = STR."""
+                {
+                    "size": 0,
+                    "query": \{ACTIVE_ASSETS_QUERY},
+                    "aggs": {
+                        "accounts": {
+                            "composite": {
+                                "size": \{ACCOUNTS_PER_PAGE},
+                                "sources": [ { "account": { "terms": { "field": "\{ACCOUNT_FIELD}" } } } ]\{after}
+                            }
+                        }
+                    }
+                }
+                """.trim();
+            var response = elasticSearch.invokeAndCheck(HttpMethod.POST,
+                STR."\{alias}/_search?ignore_unavailable=true&filter_path=aggregations.accounts.after_key,aggregations.accounts.buckets",
+                search);
+            var accounts = JsonHelper.objectMapper.readTree(response.getBody())
+                .path("aggregations").path("accounts");
+            accounts.path("buckets").forEach(bucket -> accountCounts.put(
+                bucket.path("key").path("account").asText(), bucket.path("doc_count").asLong()));
+            afterKey = accounts.has("after_key") && !accounts.path("buckets").isEmpty()
+                ? JsonHelper.toJson(accounts.get("after_key")) : null;
+        } while (afterKey != null);
+        return accountCounts;
+    }
+
+    /**
+     * Counts the active assets of an asset group that have every mandatory tag (with a non-empty
+     * value) and those that don't, with a filters aggregation over the asset group alias.
+     *
+     * @param assetGroup    - the asset group (alias)
+     * @param mandatoryTags - the tag names, such as 'Application'
+     * @return - the 'total', 'compliant' and 'noncompliant' counts
+     * @throws IOException - Network failures as well as HTTP errors
+     */
+    public Map<String, Object> fetchTagCompliance(String assetGroup, List<String> mandatoryTags)
+        throws IOException {
+        var tagged = new ArrayList<String>();
+        for (var tag : mandatoryTags) {
+            // Tags are stored with an upper case first letter
+            var field = AssetDocumentFields.asTag(
+                STR."\{tag.substring(0, 1).toUpperCase()}\{tag.substring(1)}");
+            tagged.add(STR."{ \"exists\": { \"field\": \"\{field}\" } }");
+            tagged.add(STR."{ \"bool\": { \"must_not\": { \"term\": { \"\{AssetDocumentFields.asKeyword(
+                field)}\": \"\" } } } }");
+        }
+        var search = STR."""
+            {
+                "size": 0,
+                "track_total_hits": true,
+                "query": \{ACTIVE_ASSETS_QUERY},
+                "aggs": {
+                    "tagging": {
+                        "filters": {
+                            "filters": { "tagged": { "bool": { "must": [ \{String.join(", ", tagged)} ] } } },
+                            "other_bucket_key": "untagged"
+                        }
+                    }
+                }
+            }
+            """.trim();
+        var response = elasticSearch.invokeAndCheck(HttpMethod.POST,
+            STR."\{assetGroup}/_search?ignore_unavailable=true&filter_path=hits.total.value,aggregations.tagging.buckets",
+            search);
+        var root = JsonHelper.objectMapper.readTree(response.getBody());
+        var buckets = root.path("aggregations").path("tagging").path("buckets");
+        var compliance = new HashMap<String, Object>();
+        compliance.put("total", root.path("hits").path("total").path("value").asLong());
+        compliance.put("compliant", buckets.path("tagged").path("doc_count").asLong());
+        compliance.put("noncompliant", buckets.path("untagged").path("doc_count").asLong());
+        return compliance;
+    }
+
+    private static Map<String, Long> toCounts(JsonNode buckets) {
+        var counts = new HashMap<String, Long>();
+        buckets.forEach(bucket -> counts.put(bucket.path("key").asText(),
+            bucket.path("doc_count").asLong()));
+        return counts;
+    }
+}
@@ -0,0 +1,63 @@
+package com.paladincloud.common.assets;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * A stand-in for the DynamoDB tracker when no table is configured. The runs are kept in memory, so
+ * it only works when every unit of a run is processed by the same process (such as locally).
+ */
+@Singleton
+public class LocalCompletionTracker implements CompletionTracker {
+
+    // The most completed run ids remembered
+    private static final int MAX_COMPLETED_RUNS = 1000;
+
+    // Static, so the units of a run handled by later invocations of a warm Lambda are counted.
+    // A run is dropped once it completes; only its id is kept (for a while), so a redelivered
+    // unit doesn't start the run over.
+    private static final Map<String, Run> runs = new HashMap<>();
+    private static final Map<String, Boolean> completedRuns = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_COMPLETED_RUNS;
+        }
+    };
+
+    @Inject
+    public LocalCompletionTracker() {
+    }
+
+    @Override
+    public Completion complete(WorkUnit unit, Set<String> types, AssetChanges changes) {
+        synchronized (runs) {
+            if (completedRuns.containsKey(unit.runId())) {
+                return null;
+            }
+            var run = runs.computeIfAbsent(unit.runId(), _ -> new Run());
+            if (!run.completedUnits.add(unit.index())) {
+                return null;
+            }
+            run.types.addAll(types);
+            run.changes = run.changes.merge(changes);
+            if (run.completedUnits.size() < unit.count()) {
+                return null;
+            }
+            runs.remove(unit.runId());
+            completedRuns.put(unit.runId(), true);
+            return new Completion(run.types, run.changes);
+        }
+    }
+
+    private static class Run {
+
+        private final Set<Integer> completedUnits = new HashSet<>();
+        private final Set<String> types = new HashSet<>();
+        private AssetChanges changes = AssetChanges.empty();
+    }
+}
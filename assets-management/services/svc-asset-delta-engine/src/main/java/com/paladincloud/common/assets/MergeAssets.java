@@ -1,5 +1,6 @@
 package com.paladincloud.common.assets;
 
+import com.paladincloud.common.AssetDocumentFields;
 import com.paladincloud.common.errors.JobException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -26,6 +27,8 @@ public class MergeAssets {
     // asset exists AND the last opinion was removed.
     private final List<AssetDTO> deletedPrimaryAssets = new ArrayList<>();
     private final List<AssetDTO> deletedOpinionAssets = new ArrayList<>();
+    // The updated assets whose tags changed, which can move them in or out of asset groups
+    private final Map<String, AssetDTO> retaggedAssets = new HashMap<>();
 
     private MergeAssets() {
     }
@@ -84,7 +87,11 @@ public class MergeAssets {
                 response.updatedAssets.remove(docId);
             } else {
                 response.updatedAssets.put(docId, asset);
+                var previousTags = tagsOf(asset);
                 assetHelper.updateFrom(latestDoc, asset);
+                if (!previousTags.equals(tagsOf(asset))) {
+                    response.retaggedAssets.put(docId, asset);
+                }
 
                 if (primaryIdMap.containsKey(docId)) {
                     assetHelper.updateFrom(latestDoc, primaryAsset);
@@ -139,6 +146,22 @@ public class MergeAssets {
         return response;
     }
 
+    /**
+     * The tags of an asset, both the 'tags' object and the legacy top level 'tags.' fields.
+     */
+    static private Map<String, Object> tagsOf(AssetDTO asset) {
+        var tags = new HashMap<String, Object>();
+        if (asset.getTags() != null) {
+            tags.putAll(asset.getTags());
+        }
+        asset.getAdditionalProperties().forEach((key, value) -> {
+            if (key.startsWith(AssetDocumentFields.asTag(""))) {
+                tags.put(key, value);
+            }
+        });
+        return tags;
+    }
+
     static private boolean isAssetProcessed(String key, MergeAssets mergeAssets) {
         return mergeAssets.updatedAssets.containsKey(key) || mergeAssets.newAssets.containsKey(key);
     }
@@ -0,0 +1,18 @@
+package com.paladincloud.common.assets;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * What a type was last successfully processed from: the ETag and size of its mapper files along
+ * with its configuration. When the fingerprint of a run matches, the type's assets can't have
+ * changed.
+ *
+ * @param fingerprint   - the mapper files and configuration of the type
+ * @param documentCount - the number of mapper documents processed
+ */
+public record TypeFingerprint(
+    @JsonProperty("fingerprint")
+    String fingerprint,
+    @JsonProperty("document_count")
+    long documentCount
+) {}
@@ -0,0 +1,35 @@
+package com.paladincloud.common.assets;
+
+/**
+ * One of the partitions a type's assets are split into, by a hash of their docId, so a type too
+ * large for one worker is processed by several. The same hash selects the mapper records (here)
+ * and the existing assets (by a script on the docId keyword), so each partition holds every
+ * version of its assets and missing assets are detected within it.
+ * <p></p>
+ * The docId is hashed lowercase, as the docIds of an asset reported by different sources (such as
+ * an opinion and its data source) may differ in case only; every version still lands in the same
+ * partition.
+ * <p></p>
+ * The keyword of a docId longer than MAX_HASHED_ID_LENGTH isn't indexed, so those assets all
+ * belong to the first partition.
+ *
+ * @param index - the partition, from 0
+ * @param count - the number of partitions
+ */
+public record TypePartition(int index, int count) {
+
+    // The 'ignore_above' of the keyword mapping of the docId fields
+    public static final int MAX_HASHED_ID_LENGTH = 256;
+
+    public boolean contains(String docId) {
+        if (docId == null || docId.length() > MAX_HASHED_ID_LENGTH) {
+            return index == 0;
+        }
+        return Math.floorMod(docId.toLowerCase().hashCode(), count) == index;
+    }
+
+    @Override
+    public String toString() {
+        return STR."\{index + 1}/\{count}";
+    }
+}
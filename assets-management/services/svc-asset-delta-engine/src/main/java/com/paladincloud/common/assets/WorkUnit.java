@@ -0,0 +1,143 @@
+package com.paladincloud.common.assets;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.util.JsonHelper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A share of the types of a data source, processed by a worker of its own when a data source is
+ * fanned out. The units of a run are tracked by a CompletionTracker; whichever unit finishes last
+ * sends the done event and stats request for the whole run.
+ * <p></p>
+ * Like AssetChanges, it's a single job argument (URL safe base64 of the JSON).
+ *
+ * @param runId     - identifies the fan out run, shared by its units
+ * @param index     - the unit's index, from 0
+ * @param count     - the number of units in the run
+ * @param types     - the types the unit processes
+ * @param partition - for a unit with a share of a single (large) type, the partition of the type
+ *                  it processes; null when the types are processed whole
+ * @param attempt   - how many times the unit failed before, from 0
+ */
+public record WorkUnit(
+    String runId,
+    int index,
+    int count,
+    @JsonDeserialize(as = LinkedHashSet.class)
+    Set<String> types,
+    TypePartition partition,
+    int attempt) {
+
+    /**
+     * Splits the types into units of about the given size: largest types first, each into the
+     * unit with the least data so far. A type larger than the unit size gets a unit of its own.
+     * When partitions are allowed, a type larger than the unit size is instead split by docId
+     * into as many partitions as it takes to fit (up to the limit), each a unit of its own; those
+     * units come on top of the maximum.
+     *
+     * @param runId             - the id of the run
+     * @param typeSizes         - the estimated size of each type's data
+     * @param unitSize          - the target size of a unit, in bytes
+     * @param maxUnits          - the most units the whole types are split into
+     * @param maxTypePartitions - the most partitions of a single type; 1 keeps types whole
+     */
+    public static List<WorkUnit> partition(String runId, Map<String, Long> typeSizes,
+        long unitSize, int maxUnits, int maxTypePartitions) {
+        var sortedTypes = typeSizes.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()))
+            .toList();
+
+        var partitionedTypes = new ArrayList<TypePartition>();
+        var partitionedTypeNames = new ArrayList<String>();
+        var wholeTypes = new ArrayList<Map.Entry<String, Long>>();
+        for (var entry : sortedTypes) {
+            var partitions = (int) Math.min(maxTypePartitions,
+                (entry.getValue() + unitSize - 1) / unitSize);
+            if (partitions > 1) {
+                for (var index = 0; index < partitions; index++) {
+                    partitionedTypes.add(new TypePartition(index, partitions));
+                    partitionedTypeNames.add(entry.getKey());
+                }
+            } else {
+                wholeTypes.add(entry);
+            }
+        }
+
+        var wholeSize = wholeTypes.stream().mapToLong(Map.Entry::getValue).sum();
+        var unitCount = (int) Math.min(Math.min(maxUnits, wholeTypes.size()),
+            (wholeSize + unitSize - 1) / unitSize);
+        // Even a data source without any files has a unit, so its done event is sent
+        if (unitCount == 0 && (!wholeTypes.isEmpty() || partitionedTypes.isEmpty())) {
+            unitCount = 1;
+        }
+
+        var unitTypes = new ArrayList<Set<String>>();
+        var unitSizes = new long[unitCount];
+        for (var index = 0; index < unitCount; index++) {
+            unitTypes.add(new LinkedHashSet<>());
+        }
+        var wholeUnitCount = unitCount;
+        wholeTypes.forEach(entry -> {
+            var smallest = 0;
+            for (var index = 1; index < wholeUnitCount; index++) {
+                if (unitSizes[index] < unitSizes[smallest]) {
+                    smallest = index;
+                }
+            }
+            unitTypes.get(smallest).add(entry.getKey());
+            unitSizes[smallest] += entry.getValue();
+        });
+
+        var count = unitCount + partitionedTypes.size();
+        var units = new ArrayList<WorkUnit>();
+        for (var index = 0; index < unitCount; index++) {
+            units.add(new WorkUnit(runId, index, count, unitTypes.get(index), null, 0));
+        }
+        for (var index = 0; index < partitionedTypes.size(); index++) {
+            units.add(new WorkUnit(runId, unitCount + index, count,
+                Set.of(partitionedTypeNames.get(index)), partitionedTypes.get(index), 0));
+        }
+        return units;
+    }
+
+    /**
+     * The unit to send again after it failed, or null once it has failed as many times as allowed.
+     *
+     * @param maxAttempts - the most times a unit is processed
+     */
+    public WorkUnit retry(int maxAttempts) {
+        if (attempt + 1 >= maxAttempts) {
+            return null;
+        }
+        return new WorkUnit(runId, index, count, types, partition, attempt + 1);
+    }
+
+    public static WorkUnit fromArgument(String argument) {
+        try {
+            return JsonHelper.objectMapper.readValue(
+                Base64.getUrlDecoder().decode(argument), WorkUnit.class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new JobException(STR."Unable to parse work unit: \{argument}", e);
+        }
+    }
+
+    public String toArgument() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                JsonHelper.toJson(this).getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new JobException("Unable to serialize work unit", e);
+        }
+    }
+}
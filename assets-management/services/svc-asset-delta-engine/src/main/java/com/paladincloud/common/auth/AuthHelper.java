@@ -19,7 +19,7 @@ public class AuthHelper {
 
     private static final Logger LOGGER = LogManager.getLogger(AuthHelper.class);
     private static final String API_READ_SCOPE = "API_OPERATION/READ";
-    private AccessToken accessToken;
+    private volatile AccessToken accessToken;
 
     @Inject
     public AuthHelper() {
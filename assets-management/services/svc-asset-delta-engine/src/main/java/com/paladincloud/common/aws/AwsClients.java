@@ -0,0 +1,117 @@
+package com.paladincloud.common.aws;
+
+import com.paladincloud.common.util.EnvHelper;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.awscore.client.builder.AwsSyncClientBuilder;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sts.StsClient;
+
+/**
+ * The AWS SDK clients, each built once per region and credentials and kept across warm
+ * invocations. Every client shares a single pooled HTTP client, so connections (and their TLS
+ * sessions) are reused across calls and services.
+ * <p></p>
+ * The clients are shared; callers must not close them. A null region uses the default region of
+ * the environment and null credentials use the default credentials chain.
+ * <p></p>
+ * The HTTP pool is tuned with environment variables:
+ * <pre>
+ *      AWS_MAX_CONNECTIONS     - the connections kept for all the AWS clients (default 50)
+ *      AWS_MAX_IDLE_SECONDS    - idle connections are closed after this (default 60)
+ * </pre>
+ */
+public class AwsClients {
+
+    private static final Logger LOGGER = LogManager.getLogger(AwsClients.class);
+    private static final Duration CONNECTION_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration SOCKET_TIMEOUT = Duration.ofMinutes(2);
+
+    private static final Map<ClientKey, SdkClient> clients = new ConcurrentHashMap<>();
+    private static SdkHttpClient httpClient = null;
+
+    private AwsClients() {
+    }
+
+    // Credentials providers are compared by identity; the assumed role providers are cached (see
+    // RoleHelper), so the same role gets the same provider and therefore the same clients.
+    private record ClientKey(Class<? extends SdkClient> type, String region,
+                             AwsCredentialsProvider credentialsProvider) {
+
+    }
+
+    public static S3Client s3(String region) {
+        return get(S3Client.class, region, null, S3Client::builder);
+    }
+
+    public static SqsClient sqs(String region) {
+        return get(SqsClient.class, region, null, SqsClient::builder);
+    }
+
+    public static SnsClient sns(String region) {
+        return get(SnsClient.class, region, null, SnsClient::builder);
+    }
+
+    public static DynamoDbClient dynamoDb(String region,
+        AwsCredentialsProvider credentialsProvider) {
+        return get(DynamoDbClient.class, region, credentialsProvider, DynamoDbClient::builder);
+    }
+
+    public static SecretsManagerClient secretsManager(String region,
+        AwsCredentialsProvider credentialsProvider) {
+        return get(SecretsManagerClient.class, region, credentialsProvider,
+            SecretsManagerClient::builder);
+    }
+
+    public static StsClient sts(String region, AwsCredentialsProvider credentialsProvider) {
+        return get(StsClient.class, region, credentialsProvider, StsClient::builder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C extends SdkClient, B extends AwsClientBuilder<B, C> & AwsSyncClientBuilder<B, C>> C get(
+        Class<C> type,
+        String region, AwsCredentialsProvider credentialsProvider, Supplier<B> builder) {
+        var key = new ClientKey(type, region, credentialsProvider);
+        return (C) clients.computeIfAbsent(key, _ -> {
+            var clientBuilder = builder.get();
+            if (region != null) {
+                clientBuilder.region(Region.of(region));
+            }
+            if (credentialsProvider != null) {
+                clientBuilder.credentialsProvider(credentialsProvider);
+            }
+            clientBuilder.httpClient(getHttpClient());
+            LOGGER.info("Creating {} client (region={})", type.getSimpleName(), region);
+            return clientBuilder.build();
+        });
+    }
+
+    private static synchronized SdkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient = ApacheHttpClient.builder()
+                .maxConnections(EnvHelper.getInt("AWS_MAX_CONNECTIONS", 50))
+                .connectionMaxIdleTime(
+                    Duration.ofSeconds(EnvHelper.getInt("AWS_MAX_IDLE_SECONDS", 60)))
+                .connectionTimeout(CONNECTION_TIMEOUT)
+                .socketTimeout(SOCKET_TIMEOUT)
+                .tcpKeepAlive(true)
+                .useIdleConnectionReaper(true)
+                .build();
+        }
+        return httpClient;
+    }
+}
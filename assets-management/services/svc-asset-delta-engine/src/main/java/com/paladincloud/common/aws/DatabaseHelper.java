@@ -21,6 +21,8 @@ import javax.inject.Singleton;
 @Singleton
 public class DatabaseHelper {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+
     @Inject
     public DatabaseHelper() {
     }
@@ -30,6 +32,8 @@ public class DatabaseHelper {
 
         props.setProperty("user", ConfigService.get(ConfigConstants.RDS.USER));
         props.setProperty("password", ConfigService.get(ConfigConstants.RDS.PWD));
+        // Lets the driver send a batch of updates as a single multi-statement request
+        props.setProperty("rewriteBatchedStatements", "true");
         try {
             return DriverManager.getConnection(ConfigService.get(ConfigConstants.RDS.DB_URL),
                 props);
@@ -80,4 +84,42 @@ public class DatabaseHelper {
             throw new JobException("Error inserting row", e);
         }
     }
+
+    /**
+     * Executes each statement once per row of parameters, as JDBC batches, all in a single
+     * transaction; either every update is applied or none is.
+     *
+     * @param statements - the SQL, with '?' placeholders, to the rows of parameters for it
+     */
+    public void executeBatchUpdates(Map<String, List<List<Object>>> statements) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (var entry : statements.entrySet()) {
+                    try (PreparedStatement statement = conn.prepareStatement(entry.getKey())) {
+                        var pending = 0;
+                        for (var row : entry.getValue()) {
+                            for (var index = 0; index < row.size(); index++) {
+                                statement.setObject(index + 1, row.get(index));
+                            }
+                            statement.addBatch();
+                            if (++pending == MAX_BATCH_SIZE) {
+                                statement.executeBatch();
+                                pending = 0;
+                            }
+                        }
+                        if (pending > 0) {
+                            statement.executeBatch();
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new JobException("Error executing batch updates", e);
+        }
+    }
 }
@@ -9,7 +9,6 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue.Type;
@@ -23,11 +22,7 @@ public class DynamoDBHelper {
     }
 
     static private DynamoDbClient getClient(String region, AwsCredentialsProvider credentialsProvider) {
-        var builder = DynamoDbClient.builder().region(Region.of(region));
-        if (credentialsProvider != null) {
-            builder.credentialsProvider(credentialsProvider);
-        }
-        return builder.build();
+        return AwsClients.dynamoDb(region, credentialsProvider);
     }
 
     public static Map<String, String> get(String region, AwsCredentialsProvider credentialsProvider, String tableName,
@@ -35,11 +30,10 @@ public class DynamoDBHelper {
         var keyMap = new HashMap<>(Map.of(key, AttributeValue.builder().s(keyValue).build()));
 
         var request = GetItemRequest.builder().key(keyMap).tableName(tableName).build();
-        try (var client = getClient(region, credentialsProvider)) {
-            LOGGER.info(STR."Querying '\{tableName}' for item: \{request}");
-            var item = client.getItem(request).item();
-            return getFieldsFromRow(item, fieldMap);
-        }
+        var client = getClient(region, credentialsProvider);
+        LOGGER.info(STR."Querying '\{tableName}' for item: \{request}");
+        var item = client.getItem(request).item();
+        return getFieldsFromRow(item, fieldMap);
     }
 
     public static List<Map<String, String>> query(String region, AwsCredentialsProvider credentialsProvider, String tableName,
@@ -52,15 +46,13 @@ public class DynamoDBHelper {
             .expressionAttributeValues(attributeValues)
             .build();
 
-        try (var client = getClient(region, credentialsProvider)) {
-            var response = client.query(request);
-            if (response.hasItems()) {
-                var convertedRows = new ArrayList<Map<String, String>>();
-                for (var row : response.items()) {
-                    convertedRows.add(getFieldsFromRow(row, fieldMap));
-                }
-                return convertedRows;
+        var response = getClient(region, credentialsProvider).query(request);
+        if (response.hasItems()) {
+            var convertedRows = new ArrayList<Map<String, String>>();
+            for (var row : response.items()) {
+                convertedRows.add(getFieldsFromRow(row, fieldMap));
             }
+            return convertedRows;
         }
 
         return Collections.emptyList();
@@ -0,0 +1,151 @@
+package com.paladincloud.common.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+/**
+ * Reads an S3 object with concurrent ranged GETs, returning the parts in order. Up to
+ * 'concurrency' parts are downloaded ahead of the reader, so at most that many parts (plus the one
+ * being read) are held in memory.
+ * <p></p>
+ * Each part is requested with the object's ETag, so a part fails rather than mixing in a different
+ * version of the object if it's replaced during the download.
+ */
+public class RangedObjectInputStream extends InputStream {
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String key;
+    private final String eTag;
+    private final long contentLength;
+    private final long partSize;
+    private final int concurrency;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Deque<Future<byte[]>> parts = new ArrayDeque<>();
+    private long nextPartStart = 0;
+    private byte[] currentPart = new byte[0];
+    private int position = 0;
+    private volatile String contentType = null;
+
+    /**
+     * @param s3Client      - the client the parts are fetched with
+     * @param bucket        - the bucket of the object
+     * @param key           - the key of the object
+     * @param eTag          - the ETag of the object, from a HEAD request or listing; may be null
+     * @param contentLength - the size of the object in bytes
+     * @param partSize      - the size of each ranged GET in bytes
+     * @param concurrency   - the most parts downloaded at once
+     */
+    public RangedObjectInputStream(S3Client s3Client, String bucket, String key, String eTag,
+        long contentLength, long partSize, int concurrency) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.eTag = eTag;
+        this.contentLength = contentLength;
+        this.partSize = partSize;
+        this.concurrency = Math.max(1, concurrency);
+        fetchAhead();
+    }
+
+    /**
+     * The Content-Type metadata of the object, from the response of the first part; waits for the
+     * first part if needed.
+     */
+    public String contentType() throws IOException {
+        nextPartAvailable();
+        return contentType;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextPartAvailable()) {
+            return -1;
+        }
+        return currentPart[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextPartAvailable()) {
+            return -1;
+        }
+        var count = Math.min(length, currentPart.length - position);
+        System.arraycopy(currentPart, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return currentPart.length - position;
+    }
+
+    @Override
+    public void close() {
+        parts.forEach(part -> part.cancel(true));
+        parts.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Moves to the next part once the current one is read, waiting for it if needed.
+     *
+     * @return - false at the end of the object
+     */
+    private boolean nextPartAvailable() throws IOException {
+        while (position >= currentPart.length) {
+            if (parts.isEmpty()) {
+                return false;
+            }
+            currentPart = await(parts.removeFirst());
+            position = 0;
+            fetchAhead();
+        }
+        return true;
+    }
+
+    private void fetchAhead() {
+        while (parts.size() < concurrency && nextPartStart < contentLength) {
+            var start = nextPartStart;
+            var end = Math.min(start + partSize, contentLength) - 1;
+            nextPartStart = end + 1;
+            parts.addLast(executor.submit(() -> fetchPart(start, end)));
+        }
+    }
+
+    private byte[] fetchPart(long start, long end) {
+        var request = GetObjectRequest.builder().bucket(bucket).key(key)
+            .range(STR."bytes=\{start}-\{end}").ifMatch(eTag).build();
+        var response = s3Client.getObjectAsBytes(request);
+        if (start == 0) {
+            contentType = response.response().contentType();
+        }
+        return response.asByteArrayUnsafe();
+    }
+
+    private byte[] await(Future<byte[]> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(STR."Interrupted reading s3://\{bucket}/\{key}", e);
+        } catch (ExecutionException e) {
+            throw new IOException(STR."Failed reading a part of s3://\{bucket}/\{key}",
+                e.getCause());
+        }
+    }
+}
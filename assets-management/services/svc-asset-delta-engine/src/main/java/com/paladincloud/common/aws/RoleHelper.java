@@ -1,18 +1,33 @@
 package com.paladincloud.common.aws;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.sts.StsClient;
 import software.amazon.awssdk.services.sts.auth.StsAssumeRoleCredentialsProvider;
 import software.amazon.awssdk.services.sts.model.AssumeRoleRequest;
 
 public class RoleHelper {
     private static final Logger LOGGER = LogManager.getLogger(RoleHelper.class);
 
+    // The assumed role credentials are refreshed by the first call within the prefetch time of
+    // their expiry; calls within the stale time wait for the refresh.
+    private static final Duration PREFETCH_TIME = Duration.ofMinutes(5);
+    private static final Duration STALE_TIME = Duration.ofMinutes(1);
+
+    // The credentials providers are kept across warm invocations, so the role is assumed once and
+    // then only again near expiry.
+    private static final Map<ProviderKey, AwsCredentialsProvider> providers = new ConcurrentHashMap<>();
+
+    private record ProviderKey(String awsRegion, String roleArn,
+                               AwsCredentialsProvider currentCredentialsProvider) {
+
+    }
+
     private RoleHelper() {
     }
 
@@ -22,14 +37,18 @@ public class RoleHelper {
             return runAsFn.apply(null);
         }
 
-        LOGGER.info(STR."Assuming role: \{roleArn} in region \{awsRegion}");
-        try (var stsClient = StsClient.builder().region(Region.of(awsRegion)).credentialsProvider(currentCredentialsProvider)
-            .build()) {
+        var key = new ProviderKey(awsRegion, roleArn, currentCredentialsProvider);
+        var credentialsProvider = providers.computeIfAbsent(key, _ -> {
+            LOGGER.info(STR."Assuming role: \{roleArn} in region \{awsRegion}");
             var roleRequest = AssumeRoleRequest.builder().roleArn(roleArn)
                 .roleSessionName("asset-shipper-session").build();
-            var credentialsProvider = StsAssumeRoleCredentialsProvider.builder()
-                .stsClient(stsClient).refreshRequest(roleRequest).build();
-            return runAsFn.apply(credentialsProvider);
-        }
+            return StsAssumeRoleCredentialsProvider.builder()
+                .stsClient(AwsClients.sts(awsRegion, currentCredentialsProvider))
+                .refreshRequest(roleRequest)
+                .prefetchTime(PREFETCH_TIME)
+                .staleTime(STALE_TIME)
+                .build();
+        });
+        return runAsFn.apply(credentialsProvider);
     }
 }
@@ -3,7 +3,10 @@ package com.paladincloud.common.aws;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paladincloud.common.config.ConfigConstants.S3;
+import com.paladincloud.common.config.ConfigService;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -11,11 +14,14 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
@@ -23,49 +29,145 @@ import software.amazon.awssdk.services.s3.model.S3Object;
 public class S3Helper {
 
     private static final Logger LOGGER = LogManager.getLogger(S3Helper.class);
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long MB = 1024 * 1024;
+    private static final String DEFAULT_RANGED_DOWNLOAD_THRESHOLD_MB = "64";
+    private static final String DEFAULT_RANGED_DOWNLOAD_PART_SIZE_MB = "8";
+    private static final String DEFAULT_RANGED_DOWNLOAD_CONCURRENCY = "4";
+    // Configured once; objects are fetched concurrently when mapper files are fetched ahead
+    private final ObjectMapper objectMapper = new ObjectMapper().configure(
+        DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
 
     @Inject
     public S3Helper() {
     }
 
+    /**
+     * An object opened for reading.
+     *
+     * @param stream      - the content of the object, as stored
+     * @param contentType - the Content-Type metadata of the object; may be null
+     */
+    public record ObjectStream(InputStream stream, String contentType) {
+
+    }
+
     private S3Client s3Client() {
-        return S3Client.builder().httpClientBuilder(ApacheHttpClient.builder()).build();
+        return AwsClients.s3(null);
     }
 
-    public List<String> listObjects(String bucket, String prefix) {
-        try (var s3Client = s3Client()) {
-            List<String> result = new ArrayList<>();
-            var pager = s3Client.listObjectsV2Paginator(
-                ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).build());
-            for (var page : pager) {
-                result.addAll(page.contents().stream().map(S3Object::key).toList());
-            }
-            return result;
+    /**
+     * Lists the objects under the prefix, including their size and ETag.
+     */
+    public List<S3Object> listObjectDetails(String bucket, String prefix) {
+        List<S3Object> result = new ArrayList<>();
+        var pager = s3Client().listObjectsV2Paginator(
+            ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).build());
+        for (var page : pager) {
+            result.addAll(page.contents());
         }
+        return result;
+    }
+
+    public List<String> listObjects(String bucket, String prefix) {
+        return listObjectDetails(bucket, prefix).stream().map(S3Object::key).toList();
     }
 
     public <T> List<Map<String, T>> fetchData(String bucket, String path) throws IOException {
-        try (var s3Client = s3Client()) {
-            if (!doesObjectExist(s3Client, bucket, path)) {
-                LOGGER.info("File '{}' does not exist in bucket '{}'", path, bucket);
-                return new ArrayList<>();
+        var object = openStream(bucket, path);
+        if (object == null) {
+            return new ArrayList<>();
+        }
+        try (var stream = object.stream()) {
+            return objectMapper.readValue(stream, new TypeReference<>() {
+            });
+        }
+    }
+
+    /**
+     * Opens the object for reading; the caller closes the stream.
+     *
+     * @return - the object, or null if it doesn't exist
+     */
+    public ObjectStream openStream(String bucket, String path) {
+        var s3Client = s3Client();
+        var head = headObject(s3Client, bucket, path);
+        if (head == null) {
+            LOGGER.info("File '{}' does not exist in bucket '{}'", path, bucket);
+            return null;
+        }
+        if (!isRangedDownload(head.contentLength())) {
+            return new ObjectStream(getObject(s3Client, bucket, path), head.contentType());
+        }
+        return new ObjectStream(
+            openRanged(s3Client, bucket, path, head.contentLength(), head.eTag()),
+            head.contentType());
+    }
+
+    /**
+     * Opens an object whose size and ETag are known, such as from a listing, without a HEAD
+     * request; the content type comes from the (first) GET. A ranged download fails if the object
+     * no longer has the ETag. The caller closes the stream.
+     *
+     * @return - the object, or null if it doesn't exist
+     * @throws IOException - if the first part of a ranged download fails
+     */
+    public ObjectStream openStream(String bucket, String path, long size, String eTag)
+        throws IOException {
+        var s3Client = s3Client();
+        try {
+            if (!isRangedDownload(size)) {
+                var object = getObject(s3Client, bucket, path);
+                return new ObjectStream(object, object.response().contentType());
+            }
+            var object = openRanged(s3Client, bucket, path, size, eTag);
+            try {
+                return new ObjectStream(object, object.contentType());
+            } catch (IOException e) {
+                object.close();
+                throw e;
             }
-            var response = s3Client.getObjectAsBytes(
-                GetObjectRequest.builder().bucket(bucket).key(path).build());
-            return objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true)
-                .readValue(response.asUtf8String(), new TypeReference<>() {
-                });
+        } catch (NoSuchKeyException _) {
+            LOGGER.info("File '{}' does not exist in bucket '{}'", path, bucket);
+            return null;
         }
     }
 
-    private boolean doesObjectExist(S3Client s3Client, String bucket, String path) {
+    /**
+     * Large objects are downloaded with concurrent ranged GETs, since a single GET is limited to
+     * the throughput of one connection.
+     */
+    private boolean isRangedDownload(long size) {
+        var threshold = Long.parseLong(ConfigService.get(S3.RANGED_DOWNLOAD_THRESHOLD_MB,
+            DEFAULT_RANGED_DOWNLOAD_THRESHOLD_MB)) * MB;
+        return size >= threshold;
+    }
+
+    private ResponseInputStream<GetObjectResponse> getObject(S3Client s3Client, String bucket,
+        String path) {
+        return s3Client.getObject(GetObjectRequest.builder().bucket(bucket).key(path).build());
+    }
+
+    private RangedObjectInputStream openRanged(S3Client s3Client, String bucket, String path,
+        long size, String eTag) {
+        var partSize = Long.parseLong(ConfigService.get(S3.RANGED_DOWNLOAD_PART_SIZE_MB,
+            DEFAULT_RANGED_DOWNLOAD_PART_SIZE_MB)) * MB;
+        var concurrency = Integer.parseInt(ConfigService.get(S3.RANGED_DOWNLOAD_CONCURRENCY,
+            DEFAULT_RANGED_DOWNLOAD_CONCURRENCY));
+        LOGGER.info("Downloading '{}' ({} bytes) in {} byte parts", path, size, partSize);
+        return new RangedObjectInputStream(s3Client, bucket, path, eTag, size, partSize,
+            concurrency);
+    }
+
+    /**
+     * @return - the object's metadata, or null if it doesn't exist
+     */
+    private HeadObjectResponse headObject(S3Client s3Client, String bucket, String path) {
         try {
-            s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(path).build());
-            return true;
+            return s3Client.headObject(
+                HeadObjectRequest.builder().bucket(bucket).key(path).build());
         } catch (S3Exception e) {
             if (e.statusCode() == 404) {
-                return false;
+                return null;
             }
             throw e;
         }
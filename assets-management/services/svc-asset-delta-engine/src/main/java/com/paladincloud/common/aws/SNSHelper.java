@@ -5,7 +5,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.paladincloud.common.errors.JobException;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sns.model.PublishRequest;
 import software.amazon.awssdk.services.sns.model.SnsException;
 
@@ -36,7 +35,7 @@ public class SNSHelper {
             .messageDeduplicationId(messageGroupId)
             .build();
         try {
-            var result = SnsClient.builder().build().publish(request);
+            var result = AwsClients.sns(null).publish(request);
             return result.messageId();
         } catch (SnsException e) {
             throw new JobException("Failed sending SNS message", e);
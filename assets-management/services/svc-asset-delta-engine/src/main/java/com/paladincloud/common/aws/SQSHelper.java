@@ -3,9 +3,9 @@ package com.paladincloud.common.aws;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.paladincloud.common.errors.JobException;
+import java.util.UUID;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import software.amazon.awssdk.services.sqs.model.SqsException;
 
@@ -24,21 +24,67 @@ public class SQSHelper {
         } catch (JsonProcessingException e) {
             throw new JobException("Failed sending message: unable to transform message", e);
         }
-        return internalSendMessage(queueUrl, sqsMessage, messageGroupId);
+        return internalSendMessage(queueUrl, sqsMessage, messageGroupId, null, null);
     }
 
-    private String internalSendMessage(String queueUrl, String message, String messageGroupId) {
+    /**
+     * Sends a message body as is. FIFO queues get a message group and deduplication id of their
+     * own, so the message doesn't wait on (or get mistaken for) any other.
+     */
+    public String sendRawMessage(String queueUrl, String body) {
+        if (queueUrl.endsWith(".fifo")) {
+            var messageId = UUID.randomUUID().toString();
+            return internalSendMessage(queueUrl, body, messageId, messageId, null);
+        }
+        return internalSendMessage(queueUrl, body, null, null, null);
+    }
+
+    /**
+     * Sends a message body as is, delivered only after the delay. FIFO queues don't support
+     * message delays, so the message is delivered right away on those.
+     */
+    public String sendRawMessage(String queueUrl, String body, int delaySeconds) {
+        if (delaySeconds == 0 || queueUrl.endsWith(".fifo")) {
+            return sendRawMessage(queueUrl, body);
+        }
+        return sendDelayedMessage(queueUrl, body, delaySeconds);
+    }
+
+    /**
+     * The URL of a queue from its ARN, such as the event source ARN of a received message;
+     * 'arn:aws:sqs:us-east-1:123456789012:name' becomes
+     * 'https://sqs.us-east-1.amazonaws.com/123456789012/name'.
+     */
+    public static String queueUrlFromArn(String queueArn) {
+        var parts = queueArn.split(":");
+        if (parts.length != 6 || !"sqs".equals(parts[2])) {
+            throw new JobException(STR."Not an SQS queue ARN: \{queueArn}");
+        }
+        return STR."https://sqs.\{parts[3]}.amazonaws.com/\{parts[4]}/\{parts[5]}";
+    }
+
+    /**
+     * Sends a message body as is, delivered only after the delay. Message delays aren't supported
+     * by FIFO queues, so this is for standard queues and there's no message group.
+     */
+    public String sendDelayedMessage(String queueUrl, String body, int delaySeconds) {
+        return internalSendMessage(queueUrl, body, null, null, delaySeconds);
+    }
+
+    private String internalSendMessage(String queueUrl, String message, String messageGroupId,
+        String deduplicationId, Integer delaySeconds) {
         var request = SendMessageRequest.builder()
             .queueUrl(queueUrl)
             .messageBody(message)
             .messageGroupId(messageGroupId)
+            .messageDeduplicationId(deduplicationId)
+            .delaySeconds(delaySeconds)
             .build();
 
-        try (var sqsClient = SqsClient.builder().build()) {
-            var response = sqsClient.sendMessage(request);
+        try {
+            var response = AwsClients.sqs(null).sendMessage(request);
             return response.messageId();
-        }
-        catch (SqsException e) {
+        } catch (SqsException e) {
             throw new JobException("Failed sending SQS message", e);
         }
     }
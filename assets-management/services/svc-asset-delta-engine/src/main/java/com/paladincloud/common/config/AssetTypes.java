@@ -6,15 +6,22 @@ import com.mysql.cj.util.StringUtils;
 import com.paladincloud.common.assets.AssetGroups;
 import com.paladincloud.common.aws.DatabaseHelper;
 import com.paladincloud.common.config.ConfigConstants.Config;
+import com.paladincloud.common.config.ConfigConstants.Elastic;
 import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.search.ElasticBulkLoad;
+import com.paladincloud.common.search.ElasticIndexTemplates;
 import com.paladincloud.common.search.ElasticSearchHelper;
 import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
+import com.paladincloud.common.search.IndexShardPlanner;
 import com.paladincloud.common.util.StringHelper;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import javax.inject.Inject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -24,19 +31,28 @@ public class AssetTypes {
     private static final Logger LOGGER = LogManager.getLogger(AssetTypes.class);
     private static Map<String, Map<String, String>> typeInfo;
     private static String typeInfoDataSource = null;
+    // Indexes known to exist, by host; indexes are never deleted by this service so this is kept
+    // across warm invocations to avoid re-checking them.
+    private static final Set<String> knownIndices = ConcurrentHashMap.newKeySet();
+    private static final int MAX_CONCURRENT_INDEX_CREATES = 8;
 
     private final ElasticSearchHelper elasticSearch;
     private final DatabaseHelper database;
     private final AssetGroups assetGroups;
+    private final ElasticIndexTemplates indexTemplates;
+    private final IndexShardPlanner shardPlanner;
     private boolean hasWarnedTypeOverride = false;
 
 
     @Inject
     public AssetTypes(ElasticSearchHelper elasticSearch, DatabaseHelper database,
-        AssetGroups assetGroups) {
+        AssetGroups assetGroups, ElasticIndexTemplates indexTemplates,
+        IndexShardPlanner shardPlanner) {
         this.elasticSearch = elasticSearch;
         this.database = database;
         this.assetGroups = assetGroups;
+        this.indexTemplates = indexTemplates;
+        this.shardPlanner = shardPlanner;
     }
 
     public Set<String> getTypes(String dataSource) {
@@ -120,18 +136,33 @@ public class AssetTypes {
         return typeInfo;
     }
 
-    public void setupIndexAndTypes(String dataSource) {
-            var newAssets = new HashSet<String>();
-            var types = getTypes(dataSource);
-            for (var type : types) {
-                var indexName = StringHelper.indexName(dataSource, type);
-                if (ensureIndexExists(indexName, false, type, dataSource)) {
-                    newAssets.add(indexName);
-                }
-            }
+    /**
+     * Ensures the index templates and the primary index for each type of the data source exist.
+     *
+     * @param dataSource - the data source
+     * @param typeSizes  - the estimated size of each type's data, used to choose the shard count of
+     *                   new indexes; types that are missing get a single shard.
+     */
+    public void setupIndexAndTypes(String dataSource, Map<String, Long> typeSizes) {
+        var indexToType = new HashMap<String, String>();
+        getTypes(dataSource).forEach(type -> indexToType.put(StringHelper.indexName(dataSource, type), type));
+
+        // The templates provide the settings, reserved field mappings and data source aliases for
+        // the indexes, so they must be in place before any index is created.
+        indexTemplates.ensureInstalled(dataSource);
+        var newIndices = createMissingIndices(dataSource, indexToType, typeSizes);
+
+        // Loads that never finished leave their indexes without refresh (and maybe replicas);
+        // types that aren't bulk loaded this time wouldn't get them back otherwise.
+        try {
+            ElasticBulkLoad.recover(elasticSearch, StringHelper.indexName(dataSource, "*"));
+        } catch (IOException e) {
+            LOGGER.error("Failed restoring the settings of unfinished bulk loads of {}",
+                dataSource, e);
+        }
 
-            assetGroups.createDefaultGroup(dataSource);
-            assetGroups.updateImpactedAliases(newAssets.stream().toList(), dataSource);
+        assetGroups.createDefaultGroup(dataSource);
+        assetGroups.updateImpactedAliases(newIndices, dataSource);
 
         try {
             elasticSearch.createIndex("exceptions");
@@ -140,66 +171,112 @@ public class AssetTypes {
         }
     }
 
-    public void ensureOpinionIndexExists(String dataSource, String type) {
-        var indexName = StringHelper.opinionIndexName(dataSource, type);
-        ensureIndexExists(indexName, true, null, null);
+    /**
+     * Opinion indexes have no type specific mappings, so they are created implicitly by the
+     * opinion index template on the first bulk write; only the template needs to be in place.
+     */
+    public void ensureOpinionIndexTemplate(String dataSource) {
+        indexTemplates.ensureInstalled(dataSource);
     }
 
-    private boolean ensureIndexExists(String indexName, boolean isOpinion, String type,
-        String dataSource) {
-        if (elasticSearch.indexMissing(indexName)) {
-            LOGGER.info("Creating index '{}'", indexName);
-            var additionalProperties = "";
-            if (!isOpinion) {
-                additionalProperties = STR."""
-                ,
-                "properties": {
-                    "\{type}_relations": {
-                        "type": "join",
-                        "relations": {
-                            "\{type}": ["issue_\{type}"],
-                            "issue_\{type}": [
-                                "issue_\{type}_audit",
-                                "issue_\{type}_comment",
-                                "issue_\{type}_exception"]
-                        }
+    /**
+     * Creates the indexes that don't already exist. Existence is resolved with a single request
+     * for the data source rather than one per type, and the missing indexes are created
+     * concurrently.
+     *
+     * @param dataSource  - the data source
+     * @param indexToType - the primary index name for each type
+     * @param typeSizes   - the estimated size of each type's data
+     * @return - the names of the indexes that were created
+     */
+    private List<String> createMissingIndices(String dataSource,
+        Map<String, String> indexToType, Map<String, Long> typeSizes) {
+        var unknownIndices = indexToType.keySet().stream()
+            .filter(indexName -> !knownIndices.contains(knownIndexKey(indexName))).toList();
+        if (unknownIndices.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> existingIndices;
+        try {
+            existingIndices = elasticSearch.getExistingIndices(
+                StringHelper.indexName(dataSource, "*"));
+        } catch (IOException e) {
+            throw new JobException(STR."Error resolving existing indexes for \{dataSource}", e);
+        }
+        existingIndices.forEach(indexName -> knownIndices.add(knownIndexKey(indexName)));
+
+        var missingIndices = unknownIndices.stream()
+            .filter(indexName -> !existingIndices.contains(indexName)).toList();
+        if (missingIndices.isEmpty()) {
+            return List.of();
+        }
+
+        LOGGER.info("Creating {} indexes for {}: {}", missingIndices.size(), dataSource,
+            missingIndices);
+        try (var executor = Executors.newFixedThreadPool(
+            Math.min(missingIndices.size(), MAX_CONCURRENT_INDEX_CREATES))) {
+            var futures = missingIndices.stream().map(indexName -> executor.submit(
+                () -> {
+                    var type = indexToType.get(indexName);
+                    createIndex(indexName, type,
+                        shardPlanner.shardsFor(typeSizes.getOrDefault(type, 0L)));
+                })).toList();
+            futures.forEach(f -> {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof JobException jobException) {
+                        throw jobException;
                     }
+                    throw new JobException("Failed creating index", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JobException("Interrupted while creating indexes", e);
                 }
-                """.trim();
-            }
-            var payload = STR."""
-                    {
-                        "settings": {
-                            "number_of_shards": 1,
-                            "number_of_replicas": 1,
-                            "index": {
-                                "mapping.ignore_malformed": true,
-                                "mapping.total_fields.limit": 2000
+            });
+        }
+        missingIndices.forEach(indexName -> knownIndices.add(knownIndexKey(indexName)));
+        return missingIndices;
+    }
+
+    /**
+     * Creates a primary index. Everything but the type specific join field comes from the index
+     * template, which is why primary indexes are still created explicitly.
+     */
+    private void createIndex(String indexName, String type, int shards) {
+        LOGGER.info("Creating index '{}' with {} shard(s)", indexName, shards);
+        var payload = STR."""
+            {
+                "settings": {
+                    "number_of_shards": \{shards}
+                },
+                "mappings": {
+                    "properties": {
+                        "\{type}_relations": {
+                            "type": "join",
+                            "relations": {
+                                "\{type}": ["issue_\{type}"],
+                                "issue_\{type}": [
+                                    "issue_\{type}_audit",
+                                    "issue_\{type}_comment",
+                                    "issue_\{type}_exception"]
                             }
-                        },
-                        "mappings": {
-                            "dynamic": true
-                            \{additionalProperties}
                         }
                     }
-                    """;
-
-            try {
-                elasticSearch.invokeAndCheck(HttpMethod.PUT, indexName, payload);
-                if (!isOpinion) {
-                    elasticSearch.invokeAndCheck(HttpMethod.PUT,
-                        STR."/\{indexName}/_alias/\{dataSource}",
-                        null);
-                    elasticSearch.invokeAndCheck(HttpMethod.PUT, STR."/\{indexName}/_alias/ds-all",
-                        null);
                 }
-                return true;
-            } catch (IOException e) {
-                throw new JobException(
-                    STR."Error while creating the index '\{indexName}' using '\{payload}'", e);
             }
+            """.trim();
+
+        try {
+            elasticSearch.invokeAndCheck(HttpMethod.PUT, indexName, payload);
+        } catch (IOException e) {
+            throw new JobException(
+                STR."Error while creating the index '\{indexName}' using '\{payload}'", e);
         }
+    }
 
-        return false;
+    private static String knownIndexKey(String indexName) {
+        return STR."\{ConfigService.get(Elastic.HOST)}/\{indexName}";
     }
 }
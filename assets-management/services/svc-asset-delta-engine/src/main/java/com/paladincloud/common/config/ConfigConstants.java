@@ -21,6 +21,13 @@ public interface ConfigConstants {
 
         String HOST = "batch.elastic-search.host";
         String PORT = "batch.elastic-search.port";
+        // Comma separated 'sizeInGB:shards' pairs, such as '10:2,30:4'
+        String SHARD_THRESHOLDS = "batch.elastic-search.shard-thresholds";
+        // When 'true', refresh is disabled on an index while a large type is bulk loaded
+        String BULK_LOAD = "batch.elastic-search.bulk-load";
+        String BULK_LOAD_MIN_DOCUMENTS = "batch.elastic-search.bulk-load-min-documents";
+        // When 'true', replicas are also dropped during the bulk load
+        String BULK_LOAD_DISABLE_REPLICAS = "batch.elastic-search.bulk-load-disable-replicas";
     }
 
     interface PaladinCloud {
@@ -29,6 +36,21 @@ public interface ConfigConstants {
         String API_AUTH_CREDENTIALS = "application.apiauthinfo";
         String AUTH_API_URL = "config.auth-api-url";
         String BASE_PALADIN_CLOUD_API_URI = "config.base-paladincloud-api-url";
+        // The most concurrent requests made to a single Paladin API endpoint
+        String MAX_REQUESTS_PER_ENDPOINT = "batch.paladin-api.max-requests-per-endpoint";
+    }
+
+    interface AssetGroupStats {
+
+        // The number of asset groups whose stats are fetched concurrently
+        String CONCURRENCY = "batch.asset-group-stats.concurrency";
+        // 'api' to get asset counts from the Paladin asset API rather than computing them locally
+        String COUNT_SOURCE = "batch.asset-group-stats.count-source";
+        // How long the stats request waits in the queue, so data sources finishing close together
+        // are collected together
+        String TRIGGER_DELAY_SECONDS = "batch.asset-group-stats.trigger-delay-seconds";
+        // Comma separated tag names an asset must have to be tag compliant, such as 'Application,Environment'
+        String MANDATORY_TAGS = "application.tagging.mandatoryTags";
     }
 
     interface RDS {
@@ -42,6 +64,44 @@ public interface ConfigConstants {
     interface S3 {
 
         String BUCKET_NAME = "batch.s3";
+        // Objects of at least this many megabytes are downloaded with concurrent ranged GETs
+        String RANGED_DOWNLOAD_THRESHOLD_MB = "batch.s3.ranged-download-threshold-mb";
+        String RANGED_DOWNLOAD_PART_SIZE_MB = "batch.s3.ranged-download-part-size-mb";
+        // The most parts of one object downloaded at once
+        String RANGED_DOWNLOAD_CONCURRENCY = "batch.s3.ranged-download-concurrency";
+    }
+
+    interface Mapper {
+
+        // The most mapper files fetched ahead of the type being merged; 0 disables fetching ahead
+        String PREFETCH_DEPTH = "batch.mapper.prefetch-depth";
+        // The most megabytes of mapper files (as stored) fetched ahead
+        String PREFETCH_MEMORY_MB = "batch.mapper.prefetch-memory-mb";
+        // When 'true', a type whose mapper files and configuration are unchanged since it was last
+        // processed only has the load date of its assets refreshed
+        String SKIP_UNCHANGED_TYPES = "batch.mapper.skip-unchanged-types";
+        // The seconds kept back from the time budget for sending the done event or continuation;
+        // a type is started only if its estimated time fits in what's left beyond it
+        String TIME_BUDGET_RESERVE_SECONDS = "batch.mapper.time-budget-reserve-seconds";
+        // The megabytes of mapper files (as stored) merged per second, to estimate the time of the
+        // first type; later types are estimated from the throughput of those before them
+        String ESTIMATED_MB_PER_SECOND = "batch.mapper.estimated-mb-per-second";
+    }
+
+    interface FanOut {
+
+        // The target megabytes of mapper files (as stored) in a work unit
+        String UNIT_SIZE_MB = "batch.fan-out.unit-size-mb";
+        // The most work units a data source is split into
+        String MAX_UNITS = "batch.fan-out.max-units";
+        // The most partitions (by docId) a type larger than a work unit is split into, each
+        // processed by a worker of its own; 1, the default, keeps every type whole
+        String MAX_TYPE_PARTITIONS = "batch.fan-out.max-type-partitions";
+        // The most times a work unit is processed; a failed unit is sent back to the queue until
+        // then, as the run can't complete without it
+        String MAX_UNIT_ATTEMPTS = "batch.fan-out.max-unit-attempts";
+        // The seconds a failed work unit waits before it's processed again
+        String UNIT_RETRY_DELAY_SECONDS = "batch.fan-out.unit-retry-delay-seconds";
     }
 
     interface SQS {
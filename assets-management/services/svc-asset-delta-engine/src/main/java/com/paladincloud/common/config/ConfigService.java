@@ -2,6 +2,7 @@ package com.paladincloud.common.config;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paladincloud.common.aws.AwsClients;
 import com.paladincloud.common.aws.DynamoDBHelper;
 import com.paladincloud.common.aws.RoleHelper;
 import com.paladincloud.common.config.ConfigConstants.PaladinCloud;
@@ -14,8 +15,6 @@ import java.util.Properties;
 import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
 import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
 
 public class ConfigService {
@@ -36,6 +35,14 @@ public class ConfigService {
         return properties.getProperty(propertyName, defaultValue);
     }
 
+    /**
+     * The tenant the current properties were retrieved for; used to scope caches that are kept
+     * across invocations.
+     */
+    public static String getTenantId() {
+        return propertiesTenantId;
+    }
+
     public static boolean isFeatureEnabled(String feature) {
         return "true".equalsIgnoreCase(properties.getProperty("feature_flags." + feature, "false"));
     }
@@ -80,24 +87,19 @@ public class ConfigService {
     private static Map<String, String> getSecretsWithRole(ConfigParams configParams) {
         return RoleHelper.runAs(configParams.awsRegion, null, configParams.assumeRoleArn,
             secretCredentialsProvider -> {
-                var builder = SecretsManagerClient.builder()
-                    .region(Region.of(configParams.awsRegion));
-                if (secretCredentialsProvider != null) {
-                    builder.credentialsProvider(secretCredentialsProvider);
-                }
-                try (var client = builder.build()) {
-                    var request = GetSecretValueRequest.builder()
-                        .secretId(configParams.secretNamePrefix + configParams.tenantId)
-                        .build();
-                    var response = client.getSecretValue(request);
-                    try {
-                        var strToObjectMap = JsonHelper.mapFromString(response.secretString());
-                        return strToObjectMap.entrySet().stream()
-                            .collect(
-                                Collectors.toMap(Map.Entry::getKey, e -> e.getValue().toString()));
-                    } catch (Exception e) {
-                        throw new JobException("Failed parsing JSON secret", e);
-                    }
+                var client = AwsClients.secretsManager(configParams.awsRegion,
+                    secretCredentialsProvider);
+                var request = GetSecretValueRequest.builder()
+                    .secretId(configParams.secretNamePrefix + configParams.tenantId)
+                    .build();
+                var response = client.getSecretValue(request);
+                try {
+                    var strToObjectMap = JsonHelper.mapFromString(response.secretString());
+                    return strToObjectMap.entrySet().stream()
+                        .collect(
+                            Collectors.toMap(Map.Entry::getKey, e -> e.getValue().toString()));
+                } catch (Exception e) {
+                    throw new JobException("Failed parsing JSON secret", e);
                 }
             });
     }
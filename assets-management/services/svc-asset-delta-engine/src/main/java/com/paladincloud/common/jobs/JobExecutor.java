@@ -27,7 +27,7 @@ public abstract class JobExecutor {
     private static final String OUTPUT_TRIGGER_ASSET_STATE = "OUTPUT_TRIGGER_ASSET_STATE";
 
     // The AWS config details - these are required environment variables
-    private static final String REGION = "REGION";
+    protected static final String REGION = "REGION";
     private static final String SECRET_NAME_PREFIX = "SECRET_NAME_PREFIX";
     private static final String TENANT_CONFIG_OUTPUT_TABLE = "TENANT_CONFIG_OUTPUT_TABLE";
     private static final String TENANT_TABLE_PARTITION_KEY = "TENANT_TABLE_PARTITION_KEY";
@@ -36,6 +36,15 @@ public abstract class JobExecutor {
     // When set, specifies the ARN to send the message to
     protected static final String OUTPUT_TOPIC_ARN = "OUTPUT_TOPIC_ARN";
 
+    // An optional environment variable; the URL of the (standard) SQS queue stats requests are
+    // sent to. If not set, the stats are collected by the job itself after the done event is sent.
+    protected static final String OUTPUT_TRIGGER_ASSET_STATS = "OUTPUT_TRIGGER_ASSET_STATS";
+
+    // An optional environment variable; the DynamoDB table (keyed by 'run_id') tracking the work
+    // units of fanned out data sources. If not set, the units of a local run are tracked in memory;
+    // a Lambda doesn't fan out without it.
+    protected static final String WORK_UNIT_TABLE = "WORK_UNIT_TABLE";
+
     private static final List<String> requiredEnvironmentVariables = List.of(REGION,
         SECRET_NAME_PREFIX, TENANT_CONFIG_OUTPUT_TABLE,
         TENANT_TABLE_PARTITION_KEY, TENANT_CONFIG_TABLE);
@@ -49,12 +58,28 @@ public abstract class JobExecutor {
     protected Map<String, String> envVars = new HashMap<>();
     protected Map<String, String> params = new HashMap<>();
     protected String tenantId;
+    // The job arguments as given, such as for re-sending them in a continuation
+    protected List<String> arguments = List.of();
+    protected TimeBudget timeBudget = TimeBudget.unlimited();
 
     // These are additional job arguments that are supported:
     //      asset_type_override -   A comma separated list of asset types to use, ignoring what's in the database
     //      index_prefix -          The prefix to use for creating test ElasticSearch indexes
     //      omit_done_event -       if 'true', the final SQS done event will NOT be fired.
     //      skip_asset_count -      If 'true', skip the asset count update
+    //      job -                   'asset_stats' to collect asset stats (see AssetStatsJob)
+    //      maintenance -           If 'shards', split oversized indexes instead of processing assets
+    //      checkpoint -            Set on a continuation; the types done by the earlier invocation(s)
+    //      fan_out -               If 'true', split the types into work units processed by separate workers
+    //      work_unit -             Set on the messages of a fan out; the types (or type partition) the worker processes
+
+    /**
+     * Limits the job to the time budget; jobs able to stop early (and continue elsewhere) check it.
+     */
+    public JobExecutor withTimeBudget(TimeBudget timeBudget) {
+        this.timeBudget = timeBudget;
+        return this;
+    }
 
     public void run(String jobName, String[] args) {
         LOGGER.info(STR."Starting \{jobName} \{String.join(" ", args)}");
@@ -64,7 +89,9 @@ public abstract class JobExecutor {
         try {
             setDefaultParams();
             envVars.putAll(
-                getEnvironmentVariables(List.of(ASSUME_ROLE_ARN, OUTPUT_TOPIC_ARN, OUTPUT_TRIGGER_ASSET_STATE)));
+                getEnvironmentVariables(List.of(ASSUME_ROLE_ARN, OUTPUT_TOPIC_ARN, OUTPUT_TRIGGER_ASSET_STATE,
+                    OUTPUT_TRIGGER_ASSET_STATS, WORK_UNIT_TABLE)));
+            arguments = List.of(args);
             params.putAll(parseArgs(args));
             validateRequiredFields();
 
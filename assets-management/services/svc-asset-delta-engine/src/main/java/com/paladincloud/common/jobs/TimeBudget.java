@@ -0,0 +1,52 @@
+package com.paladincloud.common.jobs;
+
+/**
+ * The time a job has left before it's stopped, such as by the Lambda timeout. Jobs run without a
+ * limit (locally, for instance) have an unlimited budget.
+ */
+public class TimeBudget {
+
+    private final long deadline;
+    private final long limitMillis;
+
+    private TimeBudget(long deadline, long limitMillis) {
+        this.deadline = deadline;
+        this.limitMillis = limitMillis;
+    }
+
+    public static TimeBudget unlimited() {
+        return new TimeBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param remainingMillis - the time left from now, such as Context.getRemainingTimeInMillis
+     */
+    public static TimeBudget fromRemaining(long remainingMillis) {
+        return new TimeBudget(System.currentTimeMillis() + remainingMillis, remainingMillis);
+    }
+
+    public boolean isLimited() {
+        return deadline != Long.MAX_VALUE;
+    }
+
+    /**
+     * The time the budget started with; work that needs more never fits in a budget like it.
+     */
+    public long limitMillis() {
+        return limitMillis;
+    }
+
+    public long remainingMillis() {
+        if (!isLimited()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Whether there's at least the given time left.
+     */
+    public boolean hasTimeFor(long millis) {
+        return remainingMillis() > millis;
+    }
+}
@@ -0,0 +1,11 @@
+package com.paladincloud.common.mapper;
+
+/**
+ * A mapper file as listed.
+ *
+ * @param size - the size in bytes, as stored
+ * @param eTag - the entity tag, which changes whenever the content changes
+ */
+public record MapperFile(long size, String eTag) {
+
+}
@@ -0,0 +1,108 @@
+package com.paladincloud.common.mapper;
+
+import com.github.luben.zstd.ZstdInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The storage variants of mapper files. A mapper file ('aws-ec2.data') is JSON unless a format
+ * extension follows the name ('aws-ec2.data.smile' or 'aws-ec2.data.cbor') or the object's content
+ * type says otherwise. It may also be compressed, in which case the compression extension comes
+ * last ('aws-ec2.data.gz' or 'aws-ec2.data.smile.zst'). Compressed files are decompressed as
+ * they're read.
+ */
+public class MapperFiles {
+
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String ZSTD_EXTENSION = ".zst";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        JSON(null, "application/json"),
+        SMILE(".smile", "application/x-jackson-smile"),
+        CBOR(".cbor", "application/cbor");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+    }
+
+    private MapperFiles() {
+    }
+
+    /**
+     * The path without its format and compression extensions, if any; 'aws-ec2.data.smile.gz'
+     * becomes 'aws-ec2.data'.
+     */
+    public static String dataPath(String path) {
+        if (path == null) {
+            return null;
+        }
+        var dataPath = removeExtension(removeExtension(path, GZIP_EXTENSION), ZSTD_EXTENSION);
+        for (var format : Format.values()) {
+            if (format.extension != null) {
+                dataPath = removeExtension(dataPath, format.extension);
+            }
+        }
+        return dataPath;
+    }
+
+    /**
+     * The format of the file, from its extension or, failing that, the content type of the
+     * object. Files without either are JSON.
+     *
+     * @param path        - the path of the file
+     * @param contentType - the content type of the object; may be null
+     */
+    public static Format formatOf(String path, String contentType) {
+        var uncompressedPath = removeExtension(removeExtension(path, GZIP_EXTENSION),
+            ZSTD_EXTENSION).toLowerCase();
+        for (var format : Format.values()) {
+            if (format.extension != null && uncompressedPath.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        if (contentType != null) {
+            var mediaType = contentType.split(";")[0].trim();
+            for (var format : Format.values()) {
+                if (format.contentType.equalsIgnoreCase(mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return Format.JSON;
+    }
+
+    /**
+     * Wraps the stream of the file so it's decompressed as it's read, based on the extension of
+     * the path. Uncompressed files are returned as is.
+     */
+    public static InputStream decompress(String path, InputStream stream) throws IOException {
+        var lowerPath = path.toLowerCase();
+        try {
+            if (lowerPath.endsWith(GZIP_EXTENSION)) {
+                return new GZIPInputStream(stream, BUFFER_SIZE);
+            }
+            if (lowerPath.endsWith(ZSTD_EXTENSION)) {
+                return new BufferedInputStream(new ZstdInputStream(stream), BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        return stream;
+    }
+
+    private static String removeExtension(String path, String extension) {
+        if (path.toLowerCase().endsWith(extension)) {
+            return path.substring(0, path.length() - extension.length());
+        }
+        return path;
+    }
+}
@@ -0,0 +1,140 @@
+package com.paladincloud.common.mapper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Fetches mapper files ahead of their use, so the download and parsing of the next files overlap
+ * the merge of the current one. The files are given in the order they'll be fetched; up to
+ * 'depth' files are fetched ahead, as long as their combined size fits in the memory budget.
+ * <p></p>
+ * A file that's fetched out of order, or that's larger than the budget, is fetched when asked for.
+ * The budget is in mapper file bytes and covers only the files fetched ahead; the parsed documents
+ * take more memory than the file, so the budget should be set well below the available memory.
+ * <p></p>
+ * This is used by a single thread; it isn't thread safe.
+ */
+public class MapperPrefetcher implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(MapperPrefetcher.class);
+
+    private final MapperRepository mapperRepository;
+    private final String base;
+    private final Map<String, MapperFile> files;
+    private final int depth;
+    private final long memoryBudget;
+    private final Map<String, Predicate<Map<String, Object>>> filters;
+    // The files not yet started, in fetch order
+    private final Deque<String> pending;
+    private final Map<String, Future<List<Map<String, Object>>>> inFlight = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private long inFlightBytes = 0;
+
+    /**
+     * @param mapperRepository - where the files are fetched from
+     * @param base             - the base (bucket) of the files
+     * @param filePaths        - the files, in the order they'll be fetched
+     * @param files            - the files as listed, for their size in bytes; a file that wasn't
+     *                         listed is fetched when asked for
+     * @param depth            - the most files fetched ahead; 0 disables fetching ahead
+     * @param memoryBudget     - the most bytes of files fetched ahead
+     */
+    public MapperPrefetcher(MapperRepository mapperRepository, String base, List<String> filePaths,
+        Map<String, MapperFile> files, int depth, long memoryBudget) {
+        this(mapperRepository, base, filePaths, files, depth, memoryBudget, Map.of());
+    }
+
+    /**
+     * @param filters - by file, the filter the documents must pass to be kept; files without one
+     *                keep all their documents
+     */
+    public MapperPrefetcher(MapperRepository mapperRepository, String base, List<String> filePaths,
+        Map<String, MapperFile> files, int depth, long memoryBudget,
+        Map<String, Predicate<Map<String, Object>>> filters) {
+        this.mapperRepository = mapperRepository;
+        this.base = base;
+        this.files = files;
+        this.depth = depth;
+        this.memoryBudget = memoryBudget;
+        this.filters = filters;
+        this.pending = new ArrayDeque<>(filePaths);
+        schedule();
+    }
+
+    /**
+     * Returns the documents of the file, waiting for it if it's being fetched ahead, and starts
+     * fetching the next files.
+     */
+    public List<Map<String, Object>> fetch(String filePath) throws IOException {
+        var future = inFlight.remove(filePath);
+        if (future == null) {
+            pending.remove(filePath);
+            schedule();
+            return fetchFile(filePath);
+        }
+
+        inFlightBytes -= files.get(filePath).size();
+        schedule();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(STR."Interrupted fetching \{filePath}", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(STR."Failed fetching \{filePath}", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!inFlight.isEmpty()) {
+            LOGGER.info("Cancelling {} mapper files fetched ahead", inFlight.size());
+        }
+        inFlight.values().forEach(future -> future.cancel(true));
+        inFlight.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts fetching the next files, in order, until the depth or memory budget is reached.
+     */
+    private void schedule() {
+        while (inFlight.size() < depth && !pending.isEmpty()) {
+            var next = pending.peekFirst();
+            var file = files.get(next);
+            if (file == null) {
+                // Left to be fetched when asked for; the files after it may still go ahead
+                pending.removeFirst();
+                continue;
+            }
+            if (inFlightBytes + file.size() > memoryBudget) {
+                return;
+            }
+            pending.removeFirst();
+            inFlightBytes += file.size();
+            inFlight.put(next, executor.submit(() -> fetchFile(next)));
+        }
+    }
+
+    private List<Map<String, Object>> fetchFile(String filePath) throws IOException {
+        var filter = filters.get(filePath);
+        if (filter == null) {
+            return mapperRepository.fetchFile(base, filePath, files.get(filePath));
+        }
+        return mapperRepository.fetchFile(base, filePath, files.get(filePath), filter);
+    }
+}
@@ -1,10 +1,36 @@
 package com.paladincloud.common.mapper;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public interface MapperRepository {
     List<String> listFiles(String base, String prefix);
-    <T> List<Map<String, T>> fetchFile(String base, String filePath) throws IOException;
+    Map<String, MapperFile> listFileDetails(String base, String prefix);
+
+    /**
+     * The documents of the file.
+     *
+     * @param file - the file as listed by listFileDetails, which spares looking it up before it's
+     *             read; null if it wasn't listed
+     */
+    <T> List<Map<String, T>> fetchFile(String base, String filePath, MapperFile file)
+        throws IOException;
+
+    default <T> List<Map<String, T>> fetchFile(String base, String filePath) throws IOException {
+        return fetchFile(base, filePath, null);
+    }
+
+    /**
+     * The documents of the file that pass the filter. Implementations able to read the file as a
+     * stream keep only those documents, rather than all of them.
+     */
+    default List<Map<String, Object>> fetchFile(String base, String filePath, MapperFile file,
+        Predicate<Map<String, Object>> filter) throws IOException {
+        List<Map<String, Object>> documents = fetchFile(base, filePath, file);
+        return documents.stream().filter(filter).collect(Collectors.toCollection(ArrayList::new));
+    }
 }
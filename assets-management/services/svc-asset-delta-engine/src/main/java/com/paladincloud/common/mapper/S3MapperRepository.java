@@ -1,12 +1,29 @@
 package com.paladincloud.common.mapper;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.paladincloud.common.aws.S3Helper;
+import com.paladincloud.common.aws.S3Helper.ObjectStream;
+import com.paladincloud.common.mapper.MapperFiles.Format;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import javax.inject.Inject;
 
 public class S3MapperRepository implements MapperRepository{
+    // Each format goes through the same Jackson parsing; only the underlying parser differs
+    private static final Map<Format, ObjectMapper> objectMappers = Map.of(
+        Format.JSON, configure(new ObjectMapper()),
+        Format.SMILE, configure(new SmileMapper()),
+        Format.CBOR, configure(new CBORMapper()));
+
     private final S3Helper s3Helper;
 
     @Inject
@@ -14,10 +31,64 @@ public class S3MapperRepository implements MapperRepository{
         this.s3Helper = s3Helper;
     }
 
+    private static ObjectMapper configure(ObjectMapper objectMapper) {
+        return objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+    }
+
     public List<String> listFiles(String base, String prefix) {
         return s3Helper.listObjects(base, prefix);
     }
-    public <T> List<Map<String, T>> fetchFile(String base, String filePath) throws IOException {
-        return s3Helper.fetchData(base, filePath);
+    public Map<String, MapperFile> listFileDetails(String base, String prefix) {
+        var details = new HashMap<String, MapperFile>();
+        s3Helper.listObjectDetails(base, prefix).forEach(
+            object -> details.put(object.key(), new MapperFile(object.size(), object.eTag())));
+        return details;
+    }
+    public <T> List<Map<String, T>> fetchFile(String base, String filePath, MapperFile file)
+        throws IOException {
+        var object = openStream(base, filePath, file);
+        if (object == null) {
+            return new ArrayList<>();
+        }
+        var objectMapper = objectMappers.get(MapperFiles.formatOf(filePath, object.contentType()));
+        try (var stream = MapperFiles.decompress(filePath, object.stream())) {
+            return objectMapper.readValue(stream, new TypeReference<>() {
+            });
+        }
+    }
+
+    /**
+     * Reads the documents one at a time, so only those passing the filter are ever held.
+     */
+    @Override
+    public List<Map<String, Object>> fetchFile(String base, String filePath, MapperFile file,
+        Predicate<Map<String, Object>> filter) throws IOException {
+        var object = openStream(base, filePath, file);
+        var documents = new ArrayList<Map<String, Object>>();
+        if (object == null) {
+            return documents;
+        }
+        var objectMapper = objectMappers.get(MapperFiles.formatOf(filePath, object.contentType()));
+        try (var stream = MapperFiles.decompress(filePath, object.stream());
+            MappingIterator<Map<String, Object>> iterator = objectMapper.readerFor(
+                new TypeReference<Map<String, Object>>() {
+                }).readValues(stream)) {
+            while (iterator.hasNext()) {
+                var document = iterator.next();
+                if (filter.test(document)) {
+                    documents.add(document);
+                }
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * A listed file is opened with its size and ETag, rather than a HEAD request for them.
+     */
+    private ObjectStream openStream(String base, String filePath, MapperFile file)
+        throws IOException {
+        return file == null ? s3Helper.openStream(base, filePath)
+            : s3Helper.openStream(base, filePath, file.size(), file.eTag());
     }
 }
@@ -5,6 +5,7 @@ import com.paladincloud.common.errors.JobException;
 import com.paladincloud.common.util.MapHelper;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javax.inject.Inject;
@@ -74,8 +75,10 @@ public class ElasticBatch implements AssetRepository.Batch {
         var response = elasticSearch.invokeCheckAndConvert(ElasticBulkResponse.class,
             ElasticSearchHelper.HttpMethod.POST, "/_bulk", payload.toString());
         if (response.errors) {
+            // Each item is keyed by its action, such as 'index' or 'update'
             var failedItems = response.items.stream()
-                .filter(i -> i.get("index") != null && ((Map<String, Object>)i.get("index")).get("error") != null)
+                .filter(i -> i.values().stream().anyMatch(
+                    action -> action instanceof Map<?, ?> result && result.get("error") != null))
                 .toList();
             var niceItems = failedItems.stream().map(MapHelper::toJsonString).toList();
 
@@ -114,6 +117,25 @@ public class ElasticBatch implements AssetRepository.Batch {
             return new BatchItem(actionInfo, document);
         }
 
+        /**
+         * Runs a painless script on the document, with the given params, or creates the document
+         * from 'upsert' if it doesn't exist. Concurrent updates of the same document are retried.
+         */
+        static public BatchItem upsertEntry(String indexName, String docId, String script,
+            Map<String, ?> params, Map<String, ?> upsert) {
+            var actionInfo = STR."""
+                { "update": { "_index": "\{indexName}", "_id": "\{docId}", "retry_on_conflict": 3 } }
+                """.trim();
+            var scriptInfo = new LinkedHashMap<String, Object>();
+            scriptInfo.put("lang", "painless");
+            scriptInfo.put("source", script);
+            scriptInfo.put("params", params);
+            var document = new LinkedHashMap<String, Object>();
+            document.put("script", scriptInfo);
+            document.put("upsert", upsert);
+            return new BatchItem(actionInfo, MapHelper.toJsonString(document));
+        }
+
         static public BatchItem routingEntry(String indexName, String routingInfo,
             Map<String, ?> document) {
             return routingEntry(indexName, routingInfo, MapHelper.toJsonString(document));
@@ -0,0 +1,253 @@
+package com.paladincloud.common.search;
+
+import com.paladincloud.common.assets.AssetRepository;
+import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
+import com.paladincloud.common.util.JsonHelper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Disables refresh (and optionally replicas) on a set of indexes while they're bulk loaded, which
+ * avoids creating many small segments and replicating every batch. Closing restores each index to
+ * its previous settings and refreshes the indexes so the loaded documents are searchable.
+ * <p></p>
+ * Settings that weren't explicitly set on an index are restored by resetting them to null, which
+ * puts the cluster default back in effect.
+ * <p></p>
+ * The settings to restore are also kept in the '_meta' of each index mapping for the length of the
+ * load, so the settings of a load that never finishes (such as a timed out run) are restored by
+ * the next load of the index, or by recover when the data source is next set up.
+ */
+public class ElasticBulkLoad implements AssetRepository.BulkLoad {
+
+    private static final Logger LOGGER = LogManager.getLogger(ElasticBulkLoad.class);
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+    // The '_meta' entry with the settings to restore; unset settings are recorded as DEFAULT_VALUE
+    private static final String META_KEY = "bulk_load";
+    private static final String DEFAULT_VALUE = "";
+
+    private final ElasticSearchHelper elasticSearch;
+    private final String indexNames;
+    // Concrete index name to the settings to restore on close
+    private final Map<String, Map<String, Object>> previousSettings;
+
+    private ElasticBulkLoad(ElasticSearchHelper elasticSearch, String indexNames,
+        Map<String, Map<String, Object>> previousSettings) {
+        this.elasticSearch = elasticSearch;
+        this.indexNames = indexNames;
+        this.previousSettings = previousSettings;
+    }
+
+    /**
+     * Records the current settings of the indexes, then disables refresh and, if requested,
+     * replicas on all of them with a single request.
+     *
+     * @param elasticSearch   - the search helper
+     * @param indexNames      - the indexes (or aliases) about to be loaded
+     * @param disableReplicas - true to also drop the replicas during the load
+     * @return - the bulk load; close it once the writes have been flushed
+     * @throws IOException - Network failures as well as HTTP errors
+     */
+    public static ElasticBulkLoad start(ElasticSearchHelper elasticSearch, List<String> indexNames,
+        boolean disableReplicas) throws IOException {
+        var names = String.join(",", indexNames);
+        var unfinishedLoads = getUnfinishedLoads(elasticSearch, names);
+        var response = elasticSearch.invokeAndCheck(HttpMethod.GET,
+            STR."\{names}/_settings/\{REFRESH_INTERVAL},\{NUMBER_OF_REPLICAS}?flat_settings=true&ignore_unavailable=true",
+            null);
+
+        var previousSettings = new LinkedHashMap<String, Map<String, Object>>();
+        if (response.getBody() != null) {
+            JsonHelper.objectMapper.readTree(response.getBody()).fields()
+                .forEachRemaining(index -> {
+                    var settings = index.getValue().path("settings");
+                    var restore = new HashMap<String, Object>();
+                    // A disabled refresh without a recorded load is left over from before the
+                    // settings were recorded; it's restored to the default rather than kept.
+                    var refresh = settings.path(REFRESH_INTERVAL).asText(null);
+                    restore.put(REFRESH_INTERVAL, "-1".equals(refresh) ? null : refresh);
+                    if (disableReplicas) {
+                        restore.put(NUMBER_OF_REPLICAS,
+                            settings.has(NUMBER_OF_REPLICAS) ? settings.get(NUMBER_OF_REPLICAS)
+                                .asText() : null);
+                    }
+                    // The current settings of an unfinished load are its bulk settings
+                    restore.putAll(unfinishedLoads.getOrDefault(index.getKey(), Map.of()));
+                    previousSettings.put(index.getKey(), restore);
+                });
+        }
+
+        // Indexes created by a template may not exist yet; there's nothing to change for those
+        if (previousSettings.isEmpty()) {
+            return new ElasticBulkLoad(elasticSearch, names, previousSettings);
+        }
+
+        recordLoad(elasticSearch, previousSettings);
+        var bulkSettings = new HashMap<String, Object>();
+        bulkSettings.put(REFRESH_INTERVAL, "-1");
+        if (disableReplicas) {
+            bulkSettings.put(NUMBER_OF_REPLICAS, 0);
+        }
+        elasticSearch.invokeAndCheck(HttpMethod.PUT,
+            STR."\{String.join(",", previousSettings.keySet())}/_settings",
+            JsonHelper.toJson(bulkSettings));
+        LOGGER.info("Started bulk load of {} (replicas disabled: {})", previousSettings.keySet(),
+            disableReplicas);
+        return new ElasticBulkLoad(elasticSearch, names, previousSettings);
+    }
+
+    /**
+     * Restores the settings of the indexes left behind by loads that never finished, including a
+     * disabled refresh from before the settings were recorded. Indexes that aren't bulk loaded
+     * again (such as small or unchanged types) would otherwise keep them.
+     *
+     * @param elasticSearch - the search helper
+     * @param indexNames    - the indexes (or a pattern of them) to check
+     * @throws IOException - Network failures as well as HTTP errors
+     */
+    public static void recover(ElasticSearchHelper elasticSearch, String indexNames)
+        throws IOException {
+        var restoreSettings = new LinkedHashMap<String, Map<String, Object>>();
+        var response = elasticSearch.invokeAndCheck(HttpMethod.GET,
+            STR."\{indexNames}/_settings/\{REFRESH_INTERVAL}?flat_settings=true&ignore_unavailable=true",
+            null);
+        if (response.getBody() != null) {
+            JsonHelper.objectMapper.readTree(response.getBody()).fields()
+                .forEachRemaining(index -> {
+                    var refresh = index.getValue().path("settings").path(REFRESH_INTERVAL)
+                        .asText(null);
+                    if ("-1".equals(refresh)) {
+                        var restore = new HashMap<String, Object>();
+                        restore.put(REFRESH_INTERVAL, null);
+                        restoreSettings.put(index.getKey(), restore);
+                    }
+                });
+        }
+        getUnfinishedLoads(elasticSearch, indexNames).forEach(
+            (indexName, settings) -> restoreSettings.computeIfAbsent(indexName,
+                _ -> new HashMap<>()).putAll(settings));
+        if (restoreSettings.isEmpty()) {
+            return;
+        }
+
+        LOGGER.warn("Restoring the settings of unfinished bulk loads: {}", restoreSettings);
+        var failure = restoreSettings(elasticSearch, restoreSettings);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Restores the settings of every index, even if some fail, then refreshes the indexes. The
+     * first failure is rethrown once everything has been attempted.
+     */
+    @Override
+    public void close() throws IOException {
+        var failure = restoreSettings(elasticSearch, previousSettings);
+
+        try {
+            elasticSearch.invokeAndCheck(HttpMethod.POST,
+                STR."\{indexNames}/_refresh?ignore_unavailable=true", null);
+        } catch (IOException e) {
+            LOGGER.error("Failed refreshing {}", indexNames, e);
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (!previousSettings.isEmpty()) {
+            LOGGER.info("Finished bulk load of {}", previousSettings.keySet());
+        }
+    }
+
+    /**
+     * The settings recorded by the loads of the indexes that haven't finished, by concrete index.
+     */
+    private static Map<String, Map<String, Object>> getUnfinishedLoads(
+        ElasticSearchHelper elasticSearch, String indexNames) throws IOException {
+        var response = elasticSearch.invokeAndCheck(HttpMethod.GET,
+            STR."\{indexNames}/_mapping?filter_path=*.mappings._meta.\{META_KEY}&ignore_unavailable=true",
+            null);
+        var loads = new LinkedHashMap<String, Map<String, Object>>();
+        if (response.getBody() != null) {
+            JsonHelper.objectMapper.readTree(response.getBody()).fields()
+                .forEachRemaining(index -> {
+                    var recorded = index.getValue().path("mappings").path("_meta").path(META_KEY);
+                    var settings = new HashMap<String, Object>();
+                    recorded.fields().forEachRemaining(setting -> settings.put(setting.getKey(),
+                        DEFAULT_VALUE.equals(setting.getValue().asText()) ? null
+                            : setting.getValue().asText()));
+                    if (!settings.isEmpty()) {
+                        loads.put(index.getKey(), settings);
+                    }
+                });
+        }
+        return loads;
+    }
+
+    /**
+     * Records the settings to restore in the '_meta' of each index, before they're changed. Indexes
+     * with the same settings are recorded by a single request.
+     */
+    private static void recordLoad(ElasticSearchHelper elasticSearch,
+        Map<String, Map<String, Object>> restoreSettings) throws IOException {
+        var indicesBySettings = new LinkedHashMap<Map<String, Object>, List<String>>();
+        restoreSettings.forEach((indexName, settings) -> indicesBySettings.computeIfAbsent(
+            settings, _ -> new ArrayList<>()).add(indexName));
+        for (var entry : indicesBySettings.entrySet()) {
+            var recorded = new HashMap<String, Object>();
+            entry.getKey().forEach((setting, value) -> recorded.put(setting,
+                value == null ? DEFAULT_VALUE : value));
+            elasticSearch.invokeAndCheck(HttpMethod.PUT,
+                STR."\{String.join(",", entry.getValue())}/_mapping",
+                JsonHelper.toJson(Map.of("_meta", Map.of(META_KEY, recorded))));
+        }
+    }
+
+    /**
+     * Restores the settings of every index, clearing the recorded load of those restored. Returns
+     * the first failure, once everything has been attempted.
+     */
+    private static IOException restoreSettings(ElasticSearchHelper elasticSearch,
+        Map<String, Map<String, Object>> restoreSettings) {
+        IOException failure = null;
+        var restored = new ArrayList<String>();
+        for (var entry : restoreSettings.entrySet()) {
+            try {
+                elasticSearch.invokeAndCheck(HttpMethod.PUT, STR."\{entry.getKey()}/_settings",
+                    JsonHelper.toJson(entry.getValue()));
+                restored.add(entry.getKey());
+            } catch (IOException e) {
+                LOGGER.error("Failed restoring settings of {} to {}", entry.getKey(),
+                    entry.getValue(), e);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (!restored.isEmpty()) {
+            try {
+                elasticSearch.invokeAndCheck(HttpMethod.PUT,
+                    STR."\{String.join(",", restored)}/_mapping",
+                    JsonHelper.toJson(Map.of("_meta", Map.of())));
+            } catch (IOException e) {
+                LOGGER.error("Failed clearing the recorded bulk load of {}", restored, e);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,205 @@
+package com.paladincloud.common.search;
+
+import com.paladincloud.common.AssetDocumentFields;
+import com.paladincloud.common.config.ConfigConstants.Elastic;
+import com.paladincloud.common.config.ConfigService;
+import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
+import com.paladincloud.common.util.JsonHelper;
+import com.paladincloud.common.util.StringHelper;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Installs the composable index templates used for the asset indexes of a data source. There is
+ * one template for the primary indexes ({source}_*) and a higher priority one for the opinion
+ * indexes ({source}_*_opinions). The templates provide the settings, the mappings for the reserved
+ * asset fields and the aliases, so index creation no longer needs to send them.
+ * <p></p>
+ * Templates are versioned; bump TEMPLATE_VERSION whenever their content changes so that existing
+ * clusters are upgraded on the next run. Newly created indexes pick up the change, existing
+ * indexes are unaffected.
+ */
+@Singleton
+public class ElasticIndexTemplates {
+
+    private static final Logger LOGGER = LogManager.getLogger(ElasticIndexTemplates.class);
+    private static final int TEMPLATE_VERSION = 1;
+    private static final int PRIMARY_PRIORITY = 100;
+    private static final int OPINION_PRIORITY = 200;
+    private static final String ALL_SOURCES_ALIAS = "ds-all";
+
+    private static final List<String> TEXT_FIELDS = List.of(AssetDocumentFields.DOC_ID,
+        AssetDocumentFields.LEGACY_DOC_ID, AssetDocumentFields.DOC_TYPE,
+        AssetDocumentFields.LEGACY_DOC_TYPE, AssetDocumentFields.ENTITY_TYPE,
+        AssetDocumentFields.LEGACY_ENTITY_TYPE, AssetDocumentFields.ENTITY_TYPE_DISPLAY_NAME,
+        AssetDocumentFields.LEGACY_ENTITY_TYPE_DISPLAY_NAME,
+        AssetDocumentFields.LEGACY_TARGET_TYPE_DISPLAY_NAME, AssetDocumentFields.SOURCE,
+        AssetDocumentFields.LEGACY_SOURCE, AssetDocumentFields.SOURCE_DISPLAY_NAME,
+        AssetDocumentFields.LEGACY_SOURCE_DISPLAY_NAME, AssetDocumentFields.ACCOUNT_ID,
+        AssetDocumentFields.LEGACY_ACCOUNT_ID, AssetDocumentFields.ACCOUNT_NAME,
+        AssetDocumentFields.LEGACY_ACCOUNT_NAME, AssetDocumentFields.REGION,
+        AssetDocumentFields.RESOURCE_ID, AssetDocumentFields.LEGACY_RESOURCE_ID,
+        AssetDocumentFields.RESOURCE_NAME, AssetDocumentFields.LEGACY_RESOURCE_NAME,
+        AssetDocumentFields.ASSET_STATE, AssetDocumentFields.PRIMARY_PROVIDER,
+        AssetDocumentFields.LEGACY_IS_ENTITY,
+        // The dates are stored as "yyyy-MM-dd HH:mm:00Z", which dynamic mapping has always
+        // treated as text; they stay that way so existing queries and indexes remain compatible.
+        AssetDocumentFields.LOAD_DATE, AssetDocumentFields.LEGACY_LOAD_DATE,
+        AssetDocumentFields.LAST_SCAN_DATE, AssetDocumentFields.LEGACY_LAST_SCAN_DATE,
+        AssetDocumentFields.FIRST_DISCOVERY_DATE, AssetDocumentFields.LEGACY_FIRST_DISCOVERY_DATE);
+
+    private static final List<String> BOOLEAN_FIELDS = List.of(AssetDocumentFields.IS_ENTITY,
+        AssetDocumentFields.IS_LATEST, AssetDocumentFields.LEGACY_IS_LATEST,
+        AssetDocumentFields.IS_ACTIVE);
+
+    // The templates installed at the current version, by host; kept across warm invocations.
+    private static final Set<String> installedTemplates = ConcurrentHashMap.newKeySet();
+
+    private final ElasticSearchHelper elasticSearch;
+
+    @Inject
+    public ElasticIndexTemplates(ElasticSearchHelper elasticSearch) {
+        this.elasticSearch = elasticSearch;
+    }
+
+    /**
+     * Ensures the primary and opinion templates for the data source exist at the current version,
+     * installing or upgrading them as needed.
+     *
+     * @param dataSource - the data source, such as 'aws'
+     */
+    public void ensureInstalled(String dataSource) {
+        var primaryName = primaryTemplateName(dataSource);
+        var opinionName = opinionTemplateName(dataSource);
+        if (installedTemplates.contains(cacheKey(primaryName)) && installedTemplates.contains(
+            cacheKey(opinionName))) {
+            return;
+        }
+
+        try {
+            var versions = getTemplateVersions(
+                StringHelper.indexName("paladin-templates", dataSource) + "*");
+            if (versions.getOrDefault(primaryName, -1) < TEMPLATE_VERSION) {
+                install(primaryName, primaryTemplate(dataSource));
+            }
+            if (versions.getOrDefault(opinionName, -1) < TEMPLATE_VERSION) {
+                install(opinionName, opinionTemplate(dataSource));
+            }
+        } catch (IOException e) {
+            throw new JobException(STR."Error installing index templates for \{dataSource}", e);
+        }
+        installedTemplates.add(cacheKey(primaryName));
+        installedTemplates.add(cacheKey(opinionName));
+    }
+
+    private Map<String, Integer> getTemplateVersions(String namePattern) throws IOException {
+        var response = elasticSearch.invokeAndCheck(HttpMethod.GET, STR."""
+            _index_template/\{namePattern}?filter_path=index_templates.name,index_templates.index_template.version
+            """.trim(), null);
+        var versions = new HashMap<String, Integer>();
+        if (response.getBody() != null) {
+            JsonHelper.objectMapper.readTree(response.getBody()).path("index_templates")
+                .forEach(template -> versions.put(template.path("name").asText(),
+                    template.path("index_template").path("version").asInt(-1)));
+        }
+        return versions;
+    }
+
+    private void install(String name, String template) throws IOException {
+        LOGGER.info("Installing index template '{}' version {}", name, TEMPLATE_VERSION);
+        elasticSearch.invokeAndCheck(HttpMethod.PUT, STR."_index_template/\{name}", template);
+    }
+
+    private String primaryTemplate(String dataSource) throws IOException {
+        return STR."""
+            {
+                "index_patterns": ["\{StringHelper.indexName(dataSource, "*")}"],
+                "priority": \{PRIMARY_PRIORITY},
+                "version": \{TEMPLATE_VERSION},
+                "template": {
+                    "settings": \{settings()},
+                    "mappings": \{mappings()},
+                    "aliases": {
+                        "\{dataSource}": {},
+                        "\{ALL_SOURCES_ALIAS}": {}
+                    }
+                }
+            }
+            """.trim();
+    }
+
+    private String opinionTemplate(String dataSource) throws IOException {
+        return STR."""
+            {
+                "index_patterns": ["\{StringHelper.opinionIndexName(dataSource, "*")}"],
+                "priority": \{OPINION_PRIORITY},
+                "version": \{TEMPLATE_VERSION},
+                "template": {
+                    "settings": \{settings()},
+                    "mappings": \{mappings()}
+                }
+            }
+            """.trim();
+    }
+
+    private String settings() {
+        return """
+            {
+                "number_of_shards": 1,
+                "number_of_replicas": 1,
+                "index": {
+                    "mapping.ignore_malformed": true,
+                    "mapping.total_fields.limit": 2000
+                }
+            }
+            """.trim();
+    }
+
+    private String mappings() throws IOException {
+        var properties = new LinkedHashMap<String, Object>();
+        TEXT_FIELDS.forEach(field -> properties.put(field, Map.of("type", "text", "fields",
+            Map.of("keyword", Map.of("type", "keyword", "ignore_above", 256)))));
+        BOOLEAN_FIELDS.forEach(field -> properties.put(field, Map.of("type", "boolean")));
+        return STR."""
+            {
+                "dynamic": true,
+                "dynamic_templates": [
+                    {
+                        "tags": {
+                            "path_match": "\{AssetDocumentFields.asTag("*")}",
+                            "mapping": {
+                                "type": "text",
+                                "fields": {
+                                    "keyword": { "type": "keyword", "ignore_above": 256 }
+                                }
+                            }
+                        }
+                    }
+                ],
+                "properties": \{JsonHelper.toJson(properties)}
+            }
+            """.trim();
+    }
+
+    private String primaryTemplateName(String dataSource) {
+        return StringHelper.indexName("paladin-templates", dataSource) + "-primary";
+    }
+
+    private String opinionTemplateName(String dataSource) {
+        return StringHelper.indexName("paladin-templates", dataSource) + "-opinions";
+    }
+
+    private static String cacheKey(String templateName) {
+        return STR."\{ConfigService.get(Elastic.HOST)}/\{templateName}/\{TEMPLATE_VERSION}";
+    }
+}
@@ -1,15 +1,19 @@
 package com.paladincloud.common.search;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paladincloud.common.AssetDocumentFields;
 import com.paladincloud.common.assets.AssetDTO;
+import com.paladincloud.common.assets.TypePartition;
 import com.paladincloud.common.config.ConfigConstants.Elastic;
 import com.paladincloud.common.config.ConfigService;
 import com.paladincloud.common.errors.JobException;
 import com.paladincloud.common.util.JsonHelper;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
@@ -158,18 +162,43 @@ public class ElasticSearchHelper {
      */
     public Map<String, AssetDTO> getAssets(String indexName, boolean latestOnly,
         List<String> filters) {
-        String query;
+        return getAssets(indexName, latestOnly, filters, null);
+    }
+
+    /**
+     * Gets the assets of one partition of the index, or all of them if the partition is null.
+     *
+     * @see TypePartition
+     */
+    public Map<String, AssetDTO> getAssets(String indexName, boolean latestOnly,
+        List<String> filters, TypePartition partition) {
+        String match;
         if (latestOnly) {
-            query = """
-                {"query": { "bool": { "must": [ { "term": { "latest": { "value": true } } }, { "term": { "_entity": { "value": "true" } } } ] } }}
+            match = """
+                { "bool": { "must": [ { "term": { "latest": { "value": true } } }, { "term": { "_entity": { "value": "true" } } } ] } }
+                """.trim();
+        } else {
+            match = """
+                {"match_all": {}}
+                """.trim();
+        }
+        String query;
+        if (partition == null) {
+            query = STR."""
+                {"query": \{match}}
                 """;
         } else {
-            query = """
-                {"query": {"match_all": {}}}
+            query = STR."""
+                {"query": { "bool": { "must": [ \{match} ], "filter": [ \{partitionFilter(partition)} ] } }}
                 """;
         }
 
+        // Indexes created by a template don't exist until their first write; that's the same as
+        // an empty index.
         int totalDocumentCount = getDocumentCount(indexName, query);
+        if (totalDocumentCount == 0) {
+            return new HashMap<>();
+        }
         boolean scroll = totalDocumentCount > ElasticSearchHelper.MAX_RETURNED_RESULTS;
 
         var filterPath = new StringBuilder();
@@ -184,9 +213,6 @@ public class ElasticSearchHelper {
         String endPoint = STR."\{indexName}/_search?scroll=1m\{filterPath}&size=\{Math.min(
             totalDocumentCount,
             ElasticSearchHelper.MAX_RETURNED_RESULTS)}";
-        if (totalDocumentCount == 0) {
-            endPoint = STR."\{indexName}/_search?scroll=1m";
-        }
 
         Map<String, AssetDTO> results = new HashMap<>();
         String scrollId = fetchAssetAndScrollId(endPoint, results, query);
@@ -205,6 +231,24 @@ public class ElasticSearchHelper {
         return results;
     }
 
+    /**
+     * Matches the documents whose docId hashes to the partition, the same as
+     * TypePartition.contains. The keyword of the docId is hashed, falling back to the legacy
+     * docId; documents without either belong to the first partition.
+     */
+    private static String partitionFilter(TypePartition partition) {
+        return STR."""
+            { "script": { "script": {
+                "source": "String id = null; for (String field : params.fields) { if (doc.containsKey(field) && doc[field].size() > 0) { id = doc[field].value; break; } } if (id == null) { return params.partition == 0; } int hash = id.toLowerCase().hashCode() % params.partitions; if (hash < 0) { hash += params.partitions; } return hash == params.partition;",
+                "params": {
+                    "fields": [ "\{AssetDocumentFields.asKeyword(AssetDocumentFields.DOC_ID)}", "\{AssetDocumentFields.asKeyword(AssetDocumentFields.LEGACY_DOC_ID)}" ],
+                    "partition": \{partition.index()},
+                    "partitions": \{partition.count()}
+                }
+            } } }
+            """.trim();
+    }
+
     /**
      * Fetch assets using and return the scroll id.
      *
@@ -240,6 +284,27 @@ public class ElasticSearchHelper {
         }
     }
 
+    /**
+     * Resolves the indexes matching a pattern with a single request, rather than checking each
+     * index individually. Aliases matching the pattern are included, since an index may have been
+     * replaced by an alias of the same name (see {@link IndexShardPlanner}).
+     *
+     * @param indexPattern - the index name or wildcard pattern, such as "aws_*"
+     * @return - the names of the existing indexes and aliases matching the pattern
+     * @throws IOException - Network failures as well as HTTP errors
+     */
+    public Set<String> getExistingIndices(String indexPattern) throws IOException {
+        var response = invokeAndCheck(HttpMethod.GET,
+            STR."_resolve/index/\{indexPattern}?expand_wildcards=all", null);
+        var indices = new HashSet<String>();
+        if (response.getBody() != null) {
+            var root = JsonHelper.objectMapper.readTree(response.getBody());
+            root.path("indices").forEach(index -> indices.add(index.path("name").asText()));
+            root.path("aliases").forEach(alias -> indices.add(alias.path("name").asText()));
+        }
+        return indices;
+    }
+
     public void createIndex(String indexName) throws IOException {
         if (indexMissing(indexName)) {
             LOGGER.info("Creating index {}", indexName);
@@ -250,6 +315,37 @@ public class ElasticSearchHelper {
         }
     }
 
+    /**
+     * Gets the mapping version of an index from the cluster state metadata, along with the index
+     * UUID. The version is incremented by the cluster whenever the index mapping changes and the
+     * UUID whenever the index is recreated, which makes them a cheap way to detect that cached
+     * mapping details are stale.
+     *
+     * @param indexName - the index name (or alias)
+     * @return - the version as '{uuid}/{mapping_version}', or null if it's unavailable
+     * @throws IOException - Network failures as well as HTTP errors
+     */
+    public String getMappingVersion(String indexName) throws IOException {
+        var response = invokeAndCheck(HttpMethod.GET,
+            STR."_cluster/state/metadata/\{indexName}?filter_path=metadata.indices.*.mapping_version,metadata.indices.*.settings.index.uuid",
+            null);
+        if (response.getBody() == null) {
+            return null;
+        }
+        var indices = JsonHelper.objectMapper.readTree(response.getBody()).path("metadata")
+            .path("indices").elements();
+        if (!indices.hasNext()) {
+            return null;
+        }
+        var index = indices.next();
+        var uuid = index.path("settings").path("index").path("uuid").asText(null);
+        var mappingVersion = index.path("mapping_version").asLong(-1);
+        if (uuid == null || mappingVersion < 0) {
+            return null;
+        }
+        return STR."\{uuid}/\{mappingVersion}";
+    }
+
     private RestClient getRestClient() {
         var host = ConfigService.get(Elastic.HOST);
         if (restClient == null || !host.equals(hostForClient)) {
@@ -269,7 +365,7 @@ public class ElasticSearchHelper {
     private int getDocumentCount(String indexName, String query) {
         try {
             var response = invokeAndCheck(HttpMethod.GET,
-                STR."\{indexName}/_count?filter_path=count", query);
+                STR."\{indexName}/_count?filter_path=count&ignore_unavailable=true", query);
             return new ObjectMapper().readTree(response.getBody()).at("/count").asInt();
         } catch (IOException e) {
             throw new JobException(STR."Error getting document count in \{indexName}", e);
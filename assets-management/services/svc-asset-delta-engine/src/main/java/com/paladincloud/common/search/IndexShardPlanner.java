@@ -0,0 +1,212 @@
+package com.paladincloud.common.search;
+
+import com.paladincloud.common.config.ConfigConstants.Elastic;
+import com.paladincloud.common.config.ConfigService;
+import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
+import com.paladincloud.common.util.JsonHelper;
+import com.paladincloud.common.util.StringHelper;
+import java.io.IOException;
+import java.util.regex.Pattern;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Chooses the number of shards for asset indexes based on their size, and grows existing indexes
+ * that have outgrown their shard count.
+ * <p></p>
+ * Growing an index uses the split API. Since the index names are used directly throughout, the
+ * split index replaces the original with an alias of the same name: 'aws_ec2' is split into
+ * 'aws_ec2-s4' and 'aws_ec2' becomes an alias of it.
+ * <p></p>
+ * A split index that never took the original's place (such as when the split was cut short) is
+ * deleted, so the next split of the original can create it again.
+ */
+@Singleton
+public class IndexShardPlanner {
+
+    private static final Logger LOGGER = LogManager.getLogger(IndexShardPlanner.class);
+    private static final long BYTES_PER_GB = 1024L * 1024L * 1024L;
+    private static final String DEFAULT_THRESHOLDS = "10:2,30:4,80:8";
+    private static final Pattern SPLIT_INDEX_NAME = Pattern.compile("^(.+)-s\\d+$");
+    private static final String SPLIT_WAIT_TIMEOUT = "10m";
+
+    private final ElasticSearchHelper elasticSearch;
+
+    @Inject
+    public IndexShardPlanner(ElasticSearchHelper elasticSearch) {
+        this.elasticSearch = elasticSearch;
+    }
+
+    /**
+     * The number of shards for an index of the given size, using the configured thresholds.
+     *
+     * @param estimatedBytes - the estimated size of the index primaries
+     * @return - the shard count, at least 1
+     */
+    public int shardsFor(long estimatedBytes) {
+        return shardsForSize(estimatedBytes,
+            ConfigService.get(Elastic.SHARD_THRESHOLDS, DEFAULT_THRESHOLDS));
+    }
+
+    /**
+     * The number of shards for the given size, using 'thresholds'; the largest threshold the size
+     * reaches wins.
+     *
+     * @param bytes      - the size in bytes
+     * @param thresholds - comma separated 'sizeInGB:shards' pairs, such as '10:2,30:4'
+     * @return - the shard count, at least 1
+     */
+    public static int shardsForSize(long bytes, String thresholds) {
+        var shards = 1;
+        for (var threshold : StringHelper.split(thresholds, ",", StringHelper.EMPTY_ARRAY)) {
+            var parts = threshold.split(":");
+            if (parts.length != 2) {
+                throw new JobException(STR."Invalid shard threshold '\{threshold}' in '\{thresholds}'");
+            }
+            var minBytes = (long) (Double.parseDouble(parts[0].trim()) * BYTES_PER_GB);
+            if (bytes >= minBytes) {
+                shards = Math.max(shards, Integer.parseInt(parts[1].trim()));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * The shard count to split to; a split requires a multiple of the current count, so this is
+     * the smallest power of two multiple that reaches the desired count.
+     */
+    public static int splitTarget(int currentShards, int desiredShards) {
+        var target = currentShards;
+        while (target < desiredShards) {
+            target *= 2;
+        }
+        return target;
+    }
+
+    /**
+     * Splits each primary and opinion index of the data source whose primary store size calls for
+     * more shards than it has.
+     *
+     * @param dataSource - the data source, such as 'aws'
+     */
+    public void growIndices(String dataSource) {
+        try {
+            var response = elasticSearch.invokeAndCheck(HttpMethod.GET,
+                STR."_cat/indices/\{StringHelper.indexName(dataSource,
+                    "*")}?h=index,pri,pri.store.size&bytes=b&format=json", null);
+            if (response.getBody() == null) {
+                return;
+            }
+            for (var row : JsonHelper.objectMapper.readTree(response.getBody())) {
+                var indexName = row.path("index").asText();
+                var splitName = SPLIT_INDEX_NAME.matcher(indexName);
+                if (splitName.matches() && !isBehindAlias(indexName, splitName.group(1))) {
+                    // Left by an unfinished split; it's replaced when its source is split
+                    continue;
+                }
+                var currentShards = row.path("pri").asInt(1);
+                var storeSize = row.path("pri.store.size").asLong(0);
+                var desiredShards = shardsFor(storeSize);
+                if (desiredShards > currentShards) {
+                    split(indexName, currentShards, splitTarget(currentShards, desiredShards),
+                        storeSize);
+                }
+            }
+        } catch (IOException e) {
+            throw new JobException(STR."Error growing indexes for \{dataSource}", e);
+        }
+        LOGGER.info("Finished checking shard counts for {}", dataSource);
+    }
+
+    private void split(String sourceIndex, int currentShards, int targetShards, long storeSize)
+        throws IOException {
+        var matcher = SPLIT_INDEX_NAME.matcher(sourceIndex);
+        var logicalName = matcher.matches() ? matcher.group(1) : sourceIndex;
+        var targetIndex = STR."\{logicalName}-s\{targetShards}";
+        LOGGER.info("Splitting {} ({} bytes) from {} to {} shards as {}", sourceIndex, storeSize,
+            currentShards, targetShards, targetIndex);
+
+        // The source still exists, so a target left by an earlier split never replaced it
+        if (!elasticSearch.indexMissing(targetIndex)) {
+            if (isBehindAlias(targetIndex, logicalName)) {
+                throw new JobException(
+                    STR."\{targetIndex} already stands in for \{logicalName}; not splitting \{sourceIndex}");
+            }
+            LOGGER.warn("Deleting {}, left by an unfinished split of {}", targetIndex,
+                sourceIndex);
+            elasticSearch.invokeAndCheck(HttpMethod.DELETE, targetIndex, null);
+        }
+
+        // The split index gets the same aliases (with their filters), other than the alias
+        // standing in for the original index name, which is moved in the final swap.
+        var aliasResponse = elasticSearch.invokeAndCheck(HttpMethod.GET,
+            STR."\{sourceIndex}/_alias", null);
+        var aliases = JsonHelper.objectMapper.createObjectNode();
+        if (aliasResponse.getBody() != null) {
+            JsonHelper.objectMapper.readTree(aliasResponse.getBody()).path(sourceIndex)
+                .path("aliases").fields().forEachRemaining(alias -> {
+                    if (!alias.getKey().equals(logicalName)) {
+                        aliases.set(alias.getKey(), alias.getValue());
+                    }
+                });
+        }
+
+        elasticSearch.invokeAndCheck(HttpMethod.PUT, STR."\{sourceIndex}/_settings", """
+            { "index.blocks.write": true }
+            """.trim());
+        var targetCreated = false;
+        try {
+            elasticSearch.invokeAndCheck(HttpMethod.POST,
+                STR."\{sourceIndex}/_split/\{targetIndex}", STR."""
+                    {
+                        "settings": {
+                            "index.number_of_shards": \{targetShards},
+                            "index.blocks.write": null
+                        },
+                        "aliases": \{JsonHelper.toJson(aliases)}
+                    }
+                    """.trim());
+            targetCreated = true;
+            var health = JsonHelper.objectMapper.readTree(elasticSearch.invokeAndCheck(
+                HttpMethod.GET,
+                STR."_cluster/health/\{targetIndex}?wait_for_status=yellow&timeout=\{SPLIT_WAIT_TIMEOUT}",
+                null).getBody());
+            if (health.path("timed_out").asBoolean(false)) {
+                throw new JobException(STR."Timed out waiting for split index \{targetIndex}");
+            }
+
+            // Atomically replace the original index with an alias pointing to the split index
+            elasticSearch.invokeAndCheck(HttpMethod.POST, "_aliases", STR."""
+                {
+                    "actions": [
+                        { "add": { "index": "\{targetIndex}", "alias": "\{logicalName}" } },
+                        { "remove_index": { "index": "\{sourceIndex}" } }
+                    ]
+                }
+                """.trim());
+        } catch (Exception e) {
+            LOGGER.error("Split of {} failed, re-enabling writes", sourceIndex);
+            if (targetCreated) {
+                try {
+                    elasticSearch.invokeAndCheck(HttpMethod.DELETE, targetIndex, null);
+                } catch (IOException deleteError) {
+                    // The next split deletes it instead
+                    LOGGER.error("Failed deleting split index {}", targetIndex, deleteError);
+                }
+            }
+            elasticSearch.invokeAndCheck(HttpMethod.PUT, STR."\{sourceIndex}/_settings", """
+                { "index.blocks.write": null }
+                """.trim());
+            throw e;
+        }
+        LOGGER.info("Split {} into {}", sourceIndex, targetIndex);
+    }
+
+    private boolean isBehindAlias(String indexName, String alias) throws IOException {
+        return elasticSearch.invoke(HttpMethod.HEAD, STR."\{indexName}/_alias/\{alias}", null)
+            .getStatusCode() == 200;
+    }
+}
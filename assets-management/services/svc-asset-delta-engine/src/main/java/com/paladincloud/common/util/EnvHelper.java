@@ -0,0 +1,23 @@
+package com.paladincloud.common.util;
+
+/**
+ * Settings read from environment variables, for what has to be set up before (or without) the
+ * configuration, such as the HTTP clients.
+ */
+public class EnvHelper {
+
+    private EnvHelper() {
+    }
+
+    /**
+     * The integer value of an environment variable.
+     *
+     * @param name         - the variable name
+     * @param defaultValue - the value when the variable isn't set, or is blank
+     * @return - the value
+     */
+    public static int getInt(String name, int defaultValue) {
+        var value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -2,22 +2,38 @@ package com.paladincloud.common.util;
 
 import com.paladincloud.common.errors.JobException;
 import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
@@ -25,6 +41,21 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.util.Strings;
 import software.amazon.awssdk.utils.CollectionUtils;
 
+/**
+ * HTTP requests, with retries, over a client created on first use and kept across warm
+ * invocations, so connections are pooled and kept alive rather than opened, with a TLS
+ * handshake, for each call.
+ * <p></p>
+ * It's tuned with environment variables, since the first requests (fetching the configuration)
+ * are made before any configuration is available:
+ * <pre>
+ *      HTTP_MAX_CONNECTIONS            - the size of the pool (default 64)
+ *      HTTP_MAX_CONNECTIONS_PER_ROUTE  - the connections to a single host (default 32)
+ *      HTTP_IDLE_TIMEOUT_SECONDS       - idle connections are closed after this (default 30)
+ *      HTTP_USE_HTTP2                  - 'true' to use java.net.http, negotiating HTTP/2
+ * </pre>
+ * NOTE: java.net.http still verifies host names, unlike the Apache client which ignores them.
+ */
 public class HttpHelper {
     public enum AuthorizationType {
         BEARER("Bearer"), BASIC("Basic");
@@ -35,11 +66,22 @@ public class HttpHelper {
     }
 
     private static final Logger LOGGER = LogManager.getLogger(HttpHelper.class);
+    private static final int MAX_ATTEMPTS = 4;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long RETRY_BASE_DELAY_MS = 500;
+    private static final long MAX_RETRY_DELAY_MS = 10 * 1000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(3);
     private static final RequestConfig REQUEST_CONFIG = RequestConfig.custom()
-        .setConnectTimeout(3 * 60 * 1000)
-        .setConnectionRequestTimeout(3 * 60 * 1000)
-        .setSocketTimeout(3 * 60 * 1000)
+        .setConnectTimeout((int) REQUEST_TIMEOUT.toMillis())
+        .setConnectionRequestTimeout((int) REQUEST_TIMEOUT.toMillis())
+        .setSocketTimeout((int) REQUEST_TIMEOUT.toMillis())
         .build();
+    // A pooled connection unused for this long is checked before reuse; the server may have
+    // closed it while the Lambda was frozen.
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+    private static CloseableHttpClient apacheClient = null;
+    private static HttpClient javaClient = null;
 
     public static Map<String, String> getBasicHeaders(AuthorizationType authType, String authCredentials) {
         var headers = new HashMap<String, String>();
@@ -52,61 +94,179 @@ public class HttpHelper {
 
     public static String post(String uri, String body, AuthorizationType authType, String token)
         throws IOException {
-        try (var client = getHttpClient()) {
-            var post = new HttpPost(uri);
-            if (StringUtils.isEmpty(body)) {
-                post.setHeader("Content-Type", ContentType.APPLICATION_FORM_URLENCODED.toString());
-            } else {
-                post.setHeader("Content-Type", ContentType.APPLICATION_JSON.toString());
-            }
-            if (Strings.isNotEmpty(token)) {
-                post.setHeader("Authorization", STR."\{authType.name} \{token}");
-            }
-            post.setEntity(new StringEntity(body));
-            try (var httpResponse = client.execute(post)) {
-                if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
-                    throw new JobException("Unauthorized");
-                }
-                if (httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-                    throw new JobException(STR."HTTP call failed: \{httpResponse.getStatusLine()
-                        .getStatusCode()} \{httpResponse.getStatusLine().getReasonPhrase()}");
-                }
-                return EntityUtils.toString(httpResponse.getEntity());
-            }
+        var headers = new HashMap<String, String>();
+        if (StringUtils.isEmpty(body)) {
+            headers.put("Content-Type", ContentType.APPLICATION_FORM_URLENCODED.toString());
+        } else {
+            headers.put("Content-Type", ContentType.APPLICATION_JSON.toString());
+        }
+        if (Strings.isNotEmpty(token)) {
+            headers.put("Authorization", STR."\{authType.name} \{token}");
+        }
+        var response = execute("POST", uri, headers, body);
+        if (response.statusCode() == HttpStatus.SC_UNAUTHORIZED) {
+            throw new JobException("Unauthorized");
         }
+        if (response.statusCode() != HttpStatus.SC_OK) {
+            throw new JobException(
+                STR."HTTP call failed: \{response.statusCode()} \{response.reasonPhrase()}");
+        }
+        return response.body();
     }
 
     public static String get(String uri, Map<String, String> headers) throws IOException {
-        HttpGet request = new HttpGet(uri);
-        if (CollectionUtils.isNotEmpty(headers)) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                request.setHeader(entry.getKey(), entry.getValue());
+        var response = execute("GET", uri,
+            CollectionUtils.isNotEmpty(headers) ? headers : Map.of(), null);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            LOGGER.warn("http get failed with response status code: {} ({}); uri={}",
+                response.statusCode(), response.reasonPhrase(), uri);
+            throw new HttpResponseException(response.statusCode(), response.reasonPhrase());
+        }
+        return response.body();
+    }
+
+    /**
+     * Executes the request on the pooled client, retrying when the server is throttling (429) or
+     * failing (5xx). The wait between attempts is the 'Retry-After' header if one is given,
+     * otherwise an exponential backoff with jitter.
+     */
+    private static Response execute(String method, String uri, Map<String, String> headers,
+        String body) throws IOException {
+        for (var attempt = 1; ; attempt++) {
+            var response = send(method, uri, headers, body);
+            if (attempt >= MAX_ATTEMPTS || !isRetryable(response.statusCode())) {
+                return response;
+            }
+
+            var retryDelayMs = getRetryDelay(response.retryAfter(), attempt);
+            LOGGER.warn("http {} returned {}, retrying in {} ms (attempt {} of {}); uri={}",
+                method, response.statusCode(), retryDelayMs, attempt, MAX_ATTEMPTS, uri);
+            try {
+                Thread.sleep(retryDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting to retry", e);
             }
         }
+    }
 
-        try (var client = getHttpClient()) {
-            try (var httpResponse = client.execute(request)) {
-                if (httpResponse.getStatusLine().getStatusCode() < 200
-                    || httpResponse.getStatusLine().getStatusCode() >= 300) {
-                    LOGGER.warn("http get failed with response status code: {} ({}); uri={}",
-                        httpResponse.getStatusLine().getStatusCode(),
-                        httpResponse.getStatusLine().getReasonPhrase(), uri);
-                    throw new HttpResponseException(httpResponse.getStatusLine().getStatusCode(),
-                        httpResponse.getStatusLine().getReasonPhrase());
-                }
-                return EntityUtils.toString(httpResponse.getEntity());
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == TOO_MANY_REQUESTS || statusCode >= 500;
+    }
+
+    private static long getRetryDelay(String retryAfter, int attempt) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(MAX_RETRY_DELAY_MS, Long.parseLong(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException _) {
+                // An HTTP date rather than seconds; use the backoff instead
             }
         }
+        var backoff = Math.min(MAX_RETRY_DELAY_MS, RETRY_BASE_DELAY_MS << (attempt - 1));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private record Response(int statusCode, String reasonPhrase, String body, String retryAfter) {
+
+    }
+
+    /**
+     * Sends a request and reads the full response; the status isn't checked.
+     *
+     * @param method  - GET or POST
+     * @param uri     - the full URI
+     * @param headers - the request headers
+     * @param body    - the request body; null for none
+     * @return - the response
+     * @throws IOException - Network failures
+     */
+    private static Response send(String method, String uri, Map<String, String> headers,
+        String body) throws IOException {
+        if ("true".equalsIgnoreCase(System.getenv("HTTP_USE_HTTP2"))) {
+            return executeJava(method, uri, headers, body);
+        }
+        return executeApache(method, uri, headers, body);
+    }
+
+    private static Response executeApache(String method, String uri, Map<String, String> headers,
+        String body) throws IOException {
+        HttpRequestBase request;
+        if ("POST".equals(method)) {
+            var post = new HttpPost(uri);
+            post.setEntity(new StringEntity(body == null ? "" : body));
+            request = post;
+        } else {
+            request = new HttpGet(uri);
+        }
+        headers.forEach(request::setHeader);
+
+        try (var httpResponse = getApacheClient().execute(request)) {
+            var status = httpResponse.getStatusLine();
+            var retryAfter = httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER);
+            var entity = httpResponse.getEntity();
+            return new Response(status.getStatusCode(), status.getReasonPhrase(),
+                entity == null ? null : EntityUtils.toString(entity),
+                retryAfter == null ? null : retryAfter.getValue());
+        }
     }
 
-    private static CloseableHttpClient getHttpClient() {
+    private static Response executeJava(String method, String uri, Map<String, String> headers,
+        String body) throws IOException {
+        var request = HttpRequest.newBuilder(URI.create(uri)).timeout(REQUEST_TIMEOUT)
+            .method(method,
+                body == null ? BodyPublishers.noBody() : BodyPublishers.ofString(body));
+        headers.forEach(request::header);
         try {
-            return HttpClientBuilder.create()
+            var response = getJavaClient().send(request.build(), BodyHandlers.ofString());
+            return new Response(response.statusCode(), "", response.body(),
+                response.headers().firstValue(HttpHeaders.RETRY_AFTER).orElse(null));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(STR."Interrupted calling \{uri}", e);
+        }
+    }
+
+    private static synchronized CloseableHttpClient getApacheClient() {
+        if (apacheClient == null) {
+            var connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https",
+                        new SSLConnectionSocketFactory(trustAllContext(),
+                            NoopHostnameVerifier.INSTANCE))
+                    .build());
+            connectionManager.setMaxTotal(EnvHelper.getInt("HTTP_MAX_CONNECTIONS", 64));
+            connectionManager.setDefaultMaxPerRoute(
+                EnvHelper.getInt("HTTP_MAX_CONNECTIONS_PER_ROUTE", 32));
+            connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+            apacheClient = HttpClientBuilder.create()
                 .setDefaultRequestConfig(REQUEST_CONFIG)
-                .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-                .setSSLContext(
-                    new SSLContextBuilder().loadTrustMaterial(null, (_, _) -> true).build())
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(EnvHelper.getInt("HTTP_IDLE_TIMEOUT_SECONDS", 30),
+                    TimeUnit.SECONDS)
+                .build();
+            LOGGER.info("Created pooled HTTP client ({} connections, {} per route)",
+                connectionManager.getMaxTotal(), connectionManager.getDefaultMaxPerRoute());
+        }
+        return apacheClient;
+    }
+
+    private static synchronized HttpClient getJavaClient() {
+        if (javaClient == null) {
+            javaClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .sslContext(trustAllContext())
                 .build();
+            LOGGER.info("Created HTTP/2 client");
+        }
+        return javaClient;
+    }
+
+    private static SSLContext trustAllContext() {
+        try {
+            return new SSLContextBuilder().loadTrustMaterial(null, (_, _) -> true).build();
         } catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException e) {
             throw new JobException("Security error getting getHttpClient", e);
         }
@@ -20,6 +20,10 @@ public class TimeHelper {
         return yearMonthDayFormat.format(ZonedDateTime.now());
     }
 
+    public static String formatYearMonthDay(ZonedDateTime time) {
+        return yearMonthDayFormat.format(time);
+    }
+
     public static ZonedDateTime parseDiscoveryDate(String time) {
         return ZonedDateTime.parse(time, discoveryDateFormat);
     }
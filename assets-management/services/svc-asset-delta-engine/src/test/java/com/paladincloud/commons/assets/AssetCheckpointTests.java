@@ -0,0 +1,54 @@
+package com.paladincloud.commons.assets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.paladincloud.common.assets.AssetChanges;
+import com.paladincloud.common.assets.AssetCheckpoint;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class AssetCheckpointTests {
+
+    @Test
+    void checkpointSurvivesTheArgument() {
+        var changes = new AssetChanges(Set.of("aws_ec2"), Set.of("123456789012"));
+        var checkpoint = new AssetCheckpoint(new LinkedHashSet<>(List.of("ec2", "s3", "rds")),
+            changes);
+
+        var argument = checkpoint.toArgument();
+        assertFalse(argument.contains("="));
+        assertFalse(argument.contains(" "));
+
+        var parsed = AssetCheckpoint.fromArgument(argument);
+        assertEquals(List.of("ec2", "s3", "rds"), List.copyOf(parsed.completedTypes()));
+        assertEquals(changes.changedIndices(), parsed.changes().changedIndices());
+        assertEquals(changes.affectedAccounts(), parsed.changes().affectedAccounts());
+    }
+
+    @Test
+    void largeChangesDropTheirAccounts() {
+        var accounts = IntStream.range(0, 10_000).mapToObj(index -> STR."\{100000000000L + index}")
+            .collect(Collectors.toCollection(HashSet::new));
+        var changes = new AssetChanges(new HashSet<>(Set.of("aws_ec2")), accounts);
+
+        var limited = changes.limited();
+        assertTrue(limited.toArgument().length() <= AssetChanges.MAX_ARGUMENT_LENGTH);
+        assertEquals(Set.of("aws_ec2"), limited.changedIndices());
+        assertNull(limited.affectedAccounts());
+        assertNull(AssetCheckpoint.fromArgument(new AssetCheckpoint(Set.of("ec2"), limited)
+            .toArgument()).changes().affectedAccounts());
+
+        var small = new AssetChanges(Set.of("aws_s3"), Set.of("123456789012"));
+        assertSame(small, small.limited());
+        assertNull(small.merge(limited).affectedAccounts());
+    }
+}
@@ -126,6 +126,33 @@ public class MergeAssetsTests {
         assertEquals(Set.of("test_ec2_q13"), merger.getUpdatedAssets().keySet());
     }
 
+    @Test
+    void changedTagsAreIdentified() {
+        var existing = createExisting(List.of("test_ec2_q13", "test_ec2_q14"));
+        var latest = createLatest(List.of("q13", "q14"), "aws");
+        latest.getFirst().put(AssetDocumentFields.TAGS, Map.of("Application", "billing"));
+
+        var creator = getHelper(ZonedDateTime.now(), "test", "ec2", null);
+        var merger = MergeAssets.process(creator, existing, latest, null);
+
+        assertEquals(Set.of("test_ec2_q13", "test_ec2_q14"), merger.getUpdatedAssets().keySet());
+        assertEquals(Set.of("test_ec2_q13"), merger.getRetaggedAssets().keySet());
+    }
+
+    @Test
+    void unchangedTagsAreNotIdentified() {
+        var docId = "test_ec2_q13";
+        var existing = createExisting(List.of(docId));
+        existing.get(docId).setTags(Map.of("Application", "billing"));
+        var latest = createLatest(List.of("q13"), "aws");
+        latest.getFirst().put(AssetDocumentFields.TAGS, Map.of("Application", "billing"));
+
+        var creator = getHelper(ZonedDateTime.now(), "test", "ec2", null);
+        var merger = MergeAssets.process(creator, existing, latest, null);
+
+        assertEquals(Set.of(), merger.getRetaggedAssets().keySet());
+    }
+
     @Test
     void updatedAreModified() {
         var docId = "test_ec2_q13";
@@ -0,0 +1,142 @@
+package com.paladincloud.commons.assets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.paladincloud.common.assets.AssetChanges;
+import com.paladincloud.common.assets.LocalCompletionTracker;
+import com.paladincloud.common.assets.TypePartition;
+import com.paladincloud.common.assets.WorkUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class WorkUnitTests {
+
+    @Test
+    void typesAreBalancedAcrossUnits() {
+        var units = WorkUnit.partition("run", Map.of("ec2", 90L, "s3", 40L, "rds", 30L,
+            "iam", 20L), 100, 10, 1);
+
+        assertEquals(2, units.size());
+        assertEquals(Set.of("ec2"), units.get(0).types());
+        assertEquals(Set.of("s3", "rds", "iam"), units.get(1).types());
+        units.forEach(unit -> assertEquals(2, unit.count()));
+    }
+
+    @Test
+    void unitsAreLimited() {
+        var units = WorkUnit.partition("run", Map.of("ec2", 500L, "s3", 400L, "rds", 300L),
+            100, 2, 1);
+        assertEquals(2, units.size());
+        assertEquals(Set.of("ec2"), units.get(0).types());
+        assertEquals(Set.of("s3", "rds"), units.get(1).types());
+    }
+
+    @Test
+    void dataSourceWithoutFilesIsOneUnit() {
+        var units = WorkUnit.partition("run", Map.of(), 100, 10, 4);
+        assertEquals(1, units.size());
+        assertEquals(Set.of(), units.getFirst().types());
+    }
+
+    @Test
+    void largeTypeIsSplitIntoPartitions() {
+        var units = WorkUnit.partition("run", Map.of("ec2", 350L, "s3", 40L, "rds", 30L), 100,
+            10, 3);
+
+        assertEquals(4, units.size());
+        assertEquals(Set.of("s3", "rds"), units.get(0).types());
+        assertNull(units.get(0).partition());
+        for (var index = 0; index < 3; index++) {
+            var unit = units.get(index + 1);
+            assertEquals(Set.of("ec2"), unit.types());
+            assertEquals(new TypePartition(index, 3), unit.partition());
+            assertEquals(index + 1, unit.index());
+            assertEquals(4, unit.count());
+        }
+    }
+
+    @Test
+    void unitSurvivesTheArgument() {
+        var unit = new WorkUnit("run", 1, 3, Set.of("ec2", "s3"), null, 0);
+        assertEquals(unit, WorkUnit.fromArgument(unit.toArgument()));
+
+        var partitionUnit = new WorkUnit("run", 2, 3, Set.of("ec2"), new TypePartition(1, 2),
+            1);
+        assertEquals(partitionUnit, WorkUnit.fromArgument(partitionUnit.toArgument()));
+    }
+
+    @Test
+    void failedUnitIsRedeliveredUntilItsAttemptsRunOut() {
+        var unit = WorkUnit.partition("run", Map.of("ec2", 90L, "s3", 40L), 50, 10, 1)
+            .getFirst();
+
+        var retry = unit.retry(3);
+        assertNotNull(retry);
+        assertEquals(1, retry.attempt());
+        assertEquals(new WorkUnit(unit.runId(), unit.index(), unit.count(), unit.types(),
+            unit.partition(), 1), WorkUnit.fromArgument(retry.toArgument()));
+
+        var lastRetry = retry.retry(3);
+        assertNotNull(lastRetry);
+        assertEquals(2, lastRetry.attempt());
+        assertNull(lastRetry.retry(3));
+    }
+
+    @Test
+    void retriedUnitCompletesTheRun() {
+        var tracker = new LocalCompletionTracker();
+        var units = WorkUnit.partition(UUID.randomUUID().toString(),
+            Map.of("ec2", 90L, "s3", 40L), 50, 10, 1);
+
+        assertNull(tracker.complete(units.get(0), Set.of("ec2"), AssetChanges.empty()));
+        var completion = tracker.complete(units.get(1).retry(3), Set.of("s3"),
+            AssetChanges.empty());
+        assertNotNull(completion);
+        assertEquals(Set.of("ec2", "s3"), completion.types());
+        assertNull(tracker.complete(units.get(1), Set.of("s3"), AssetChanges.empty()));
+    }
+
+    @Test
+    void everyDocIdBelongsToOnePartition() {
+        var partitions = List.of(new TypePartition(0, 3), new TypePartition(1, 3),
+            new TypePartition(2, 3));
+        for (var docId : List.of("aws_ec2_i-1", "aws_ec2_i-2", "aws_ec2_i-3", "x".repeat(300))) {
+            assertEquals(1, partitions.stream().filter(p -> p.contains(docId)).count());
+        }
+        assertTrue(partitions.getFirst().contains("x".repeat(300)));
+    }
+
+    @Test
+    void docIdsDifferingInCaseShareAPartition() {
+        for (var index = 0; index < 5; index++) {
+            var partition = new TypePartition(index, 5);
+            assertEquals(partition.contains("aws_ec2_i-0ABC123"),
+                partition.contains("aws_ec2_i-0abc123"));
+        }
+    }
+
+    @Test
+    void lastUnitCompletesTheRunOnce() {
+        var tracker = new LocalCompletionTracker();
+        var units = WorkUnit.partition(UUID.randomUUID().toString(),
+            Map.of("ec2", 90L, "s3", 40L), 50, 10, 1);
+        var changes = new AssetChanges(Set.of("aws_s3"), Set.of("123456789012"));
+
+        assertNull(tracker.complete(units.get(0), Set.of("ec2"), AssetChanges.empty()));
+        assertNull(tracker.complete(units.get(0), Set.of("ec2"), AssetChanges.empty()));
+        var completion = tracker.complete(units.get(1), Set.of("s3"), changes);
+        assertNotNull(completion);
+        assertEquals(Set.of("ec2", "s3"), completion.types());
+        assertEquals(Set.of("aws_s3"), completion.changes().changedIndices());
+        assertEquals(List.of("123456789012"),
+            List.copyOf(completion.changes().affectedAccounts()));
+
+        assertNull(tracker.complete(units.get(1), Set.of("s3"), changes));
+    }
+}
@@ -0,0 +1,61 @@
+package com.paladincloud.commons.aws;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.paladincloud.common.aws.RangedObjectInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+@ExtendWith(MockitoExtension.class)
+class RangedObjectInputStreamTests {
+
+    @Mock
+    S3Client s3Client;
+
+    @Test
+    void partsAreReadInOrder() throws IOException {
+        var content = new byte[1000];
+        for (var index = 0; index < content.length; index++) {
+            content[index] = (byte) index;
+        }
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            var range = request.range().substring("bytes=".length()).split("-");
+            var part = Arrays.copyOfRange(content, Integer.parseInt(range[0]),
+                Integer.parseInt(range[1]) + 1);
+            return ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), part);
+        });
+
+        try (var stream = new RangedObjectInputStream(s3Client, "bucket", "key", "etag",
+            content.length, 128, 3)) {
+            assertArrayEquals(content, stream.readAllBytes());
+        }
+        // 1000 bytes in 128 byte parts
+        verify(s3Client, times(8)).getObjectAsBytes(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void failedPartThrows() {
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenThrow(
+            S3Exception.builder().statusCode(412).message("Precondition failed").build());
+
+        try (var stream = new RangedObjectInputStream(s3Client, "bucket", "key", "etag", 100, 50,
+            2)) {
+            assertThrows(IOException.class, stream::readAllBytes);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.paladincloud.commons.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.paladincloud.common.mapper.MapperFiles;
+import com.paladincloud.common.mapper.MapperFiles.Format;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+class MapperFilesTests {
+
+    private static final String DOCUMENTS = """
+        [{"_docid": "i-1"}, {"_docid": "i-2"}]
+        """;
+
+    @Test
+    void formatAndCompressionExtensionsAreRemoved() {
+        assertEquals("s3://bucket/aws-ec2.data", MapperFiles.dataPath(
+            "s3://bucket/aws-ec2.data.gz"));
+        assertEquals("s3://bucket/aws-ec2-tags.data", MapperFiles.dataPath(
+            "s3://bucket/aws-ec2-tags.data.ZST"));
+        assertEquals("s3://bucket/aws-ec2.data", MapperFiles.dataPath(
+            "s3://bucket/aws-ec2.data.smile.gz"));
+        assertEquals("s3://bucket/aws-ec2.data", MapperFiles.dataPath(
+            "s3://bucket/aws-ec2.data"));
+    }
+
+    @Test
+    void formatIsFromExtensionThenContentType() {
+        assertEquals(Format.SMILE, MapperFiles.formatOf("aws-ec2.data.smile.zst", null));
+        assertEquals(Format.CBOR, MapperFiles.formatOf("aws-ec2.data.cbor", "application/json"));
+        assertEquals(Format.CBOR, MapperFiles.formatOf("aws-ec2.data", "application/cbor"));
+        assertEquals(Format.SMILE,
+            MapperFiles.formatOf("aws-ec2.data", "application/x-jackson-smile; charset=binary"));
+        assertEquals(Format.JSON, MapperFiles.formatOf("aws-ec2.data.gz", null));
+    }
+
+    @Test
+    void gzipFileIsDecompressed() throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var stream = new GZIPOutputStream(compressed)) {
+            write(stream);
+        }
+        assertEquals(DOCUMENTS, read("aws-ec2.data.gz", compressed.toByteArray()));
+    }
+
+    @Test
+    void zstdFileIsDecompressed() throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var stream = new ZstdOutputStream(compressed)) {
+            write(stream);
+        }
+        assertEquals(DOCUMENTS, read("aws-ec2.data.zst", compressed.toByteArray()));
+    }
+
+    @Test
+    void uncompressedFileIsUnchanged() throws IOException {
+        var stream = new ByteArrayInputStream(DOCUMENTS.getBytes(StandardCharsets.UTF_8));
+        assertSame(stream, MapperFiles.decompress("aws-ec2.data", stream));
+    }
+
+    private static void write(OutputStream stream) throws IOException {
+        stream.write(DOCUMENTS.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(String path, byte[] content) throws IOException {
+        try (var stream = MapperFiles.decompress(path, new ByteArrayInputStream(content))) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
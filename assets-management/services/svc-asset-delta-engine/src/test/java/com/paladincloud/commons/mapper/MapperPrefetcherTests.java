@@ -0,0 +1,83 @@
+package com.paladincloud.commons.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.paladincloud.common.mapper.MapperFile;
+import com.paladincloud.common.mapper.MapperPrefetcher;
+import com.paladincloud.common.mapper.MapperRepository;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+
+class MapperPrefetcherTests {
+
+    @Test
+    void filesAreFetchedOnceInAnyOrder() throws IOException {
+        var repository = new FakeMapperRepository();
+        var files = Map.of("a", file(1), "b", file(1), "c", file(1));
+        try (var prefetcher = new MapperPrefetcher(repository, "bucket", List.of("a", "b", "c"),
+            files, 2, 100)) {
+            assertEquals("c", prefetcher.fetch("c").getFirst().get("file"));
+            assertEquals("a", prefetcher.fetch("a").getFirst().get("file"));
+            assertEquals("b", prefetcher.fetch("b").getFirst().get("file"));
+        }
+        assertEquals(List.of("a", "b", "c"), repository.fetched.stream().sorted().toList());
+    }
+
+    @Test
+    void fileOverBudgetWaitsUntilAskedFor() throws IOException {
+        var repository = new FakeMapperRepository();
+        var files = Map.of("a", file(5), "b", file(100), "c", file(5));
+        try (var prefetcher = new MapperPrefetcher(repository, "bucket", List.of("a", "b", "c"),
+            files, 2, 10)) {
+            prefetcher.fetch("a");
+            assertEquals(List.of("a"), repository.fetched);
+
+            assertEquals("b", prefetcher.fetch("b").getFirst().get("file"));
+            assertEquals("c", prefetcher.fetch("c").getFirst().get("file"));
+        }
+        assertEquals(List.of("a", "b", "c"), repository.fetched.stream().sorted().toList());
+    }
+
+    @Test
+    void failedFetchThrows() {
+        var repository = new FakeMapperRepository();
+        try (var prefetcher = new MapperPrefetcher(repository, "bucket", List.of("a", "fail"),
+            Map.of("a", file(1), "fail", file(1)), 2, 100)) {
+            assertThrows(IOException.class, () -> prefetcher.fetch("fail"));
+        }
+    }
+
+    private static MapperFile file(long size) {
+        return new MapperFile(size, "etag");
+    }
+
+    private static class FakeMapperRepository implements MapperRepository {
+
+        final List<String> fetched = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<String> listFiles(String base, String prefix) {
+            return List.of();
+        }
+
+        @Override
+        public Map<String, MapperFile> listFileDetails(String base, String prefix) {
+            return Map.of();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<Map<String, T>> fetchFile(String base, String filePath, MapperFile file)
+            throws IOException {
+            fetched.add(filePath);
+            if ("fail".equals(filePath)) {
+                throw new IOException("Failed");
+            }
+            return List.of(Map.of("file", (T) filePath));
+        }
+    }
+}
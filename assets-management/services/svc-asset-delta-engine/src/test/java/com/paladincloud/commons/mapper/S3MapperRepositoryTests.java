@@ -0,0 +1,78 @@
+package com.paladincloud.commons.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.paladincloud.common.aws.S3Helper;
+import com.paladincloud.common.aws.S3Helper.ObjectStream;
+import com.paladincloud.common.mapper.MapperFile;
+import com.paladincloud.common.mapper.S3MapperRepository;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class S3MapperRepositoryTests {
+
+    private static final List<Map<String, Object>> DOCUMENTS = List.of(
+        Map.of("_docid", "i-1", "_cloudType", "aws"), Map.of("_docid", "i-2", "_cloudType", "aws"));
+
+    @Mock
+    S3Helper s3Helper;
+
+    @Test
+    void smileFileIsParsedByExtension() throws IOException {
+        var content = new SmileMapper().writeValueAsBytes(DOCUMENTS);
+        when(s3Helper.openStream("bucket", "aws-ec2.data.smile")).thenReturn(
+            new ObjectStream(new ByteArrayInputStream(content), null));
+
+        assertEquals(DOCUMENTS,
+            new S3MapperRepository(s3Helper).fetchFile("bucket", "aws-ec2.data.smile"));
+    }
+
+    @Test
+    void cborFileIsParsedByContentType() throws IOException {
+        var content = new CBORMapper().writeValueAsBytes(DOCUMENTS);
+        when(s3Helper.openStream("bucket", "aws-ec2.data")).thenReturn(
+            new ObjectStream(new ByteArrayInputStream(content), "application/cbor"));
+
+        assertEquals(DOCUMENTS,
+            new S3MapperRepository(s3Helper).fetchFile("bucket", "aws-ec2.data"));
+    }
+
+    @Test
+    void filteredFileKeepsOnlyMatchingDocuments() throws IOException {
+        var content = new SmileMapper().writeValueAsBytes(DOCUMENTS);
+        when(s3Helper.openStream("bucket", "aws-ec2.data.smile")).thenReturn(
+            new ObjectStream(new ByteArrayInputStream(content), null));
+
+        assertEquals(List.of(DOCUMENTS.get(1)), new S3MapperRepository(s3Helper).fetchFile(
+            "bucket", "aws-ec2.data.smile", null,
+            document -> "i-2".equals(document.get("_docid"))));
+    }
+
+    @Test
+    void listedFileIsOpenedWithItsDetails() throws IOException {
+        var content = new SmileMapper().writeValueAsBytes(DOCUMENTS);
+        when(s3Helper.openStream("bucket", "aws-ec2.data.smile", content.length, "etag"))
+            .thenReturn(new ObjectStream(new ByteArrayInputStream(content), null));
+
+        assertEquals(DOCUMENTS, new S3MapperRepository(s3Helper).fetchFile("bucket",
+            "aws-ec2.data.smile", new MapperFile(content.length, "etag")));
+    }
+
+    @Test
+    void missingFileHasNoDocuments() throws IOException {
+        when(s3Helper.openStream("bucket", "aws-ec2.data")).thenReturn(null);
+
+        assertTrue(new S3MapperRepository(s3Helper).fetchFile("bucket", "aws-ec2.data").isEmpty());
+    }
+}
@@ -2,15 +2,21 @@ package com.paladincloud.commons.search;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 
+import com.paladincloud.common.errors.JobException;
 import com.paladincloud.common.search.ElasticBatch;
 import com.paladincloud.common.search.ElasticBatch.BatchItem;
+import com.paladincloud.common.search.ElasticBulkResponse;
 import com.paladincloud.common.search.ElasticResponse;
 import com.paladincloud.common.search.ElasticSearchHelper;
 import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -74,6 +80,41 @@ class ElasticBatchTests {
         });
     }
 
+    @Test
+    void upsertEntryFormsScriptedUpdate() throws Exception {
+        var payload = """
+            { "update": { "_index": "testing", "_id": "id-1", "retry_on_conflict": 3 } }
+            {"script":{"lang":"painless","source":"ctx._source.max = params.count","params":{"count":5}},"upsert":{"max":5}}
+            """;
+        var response = new ElasticBulkResponse();
+        response.items = List.of();
+        when(mockedElasticSearch.invokeCheckAndConvert(ElasticBulkResponse.class, HttpMethod.POST,
+            "/_bulk", payload)).thenReturn(response);
+
+        assertDoesNotThrow(() -> {
+            try (var batch = new ElasticBatch(mockedElasticSearch)) {
+                batch.add(BatchItem.upsertEntry("testing", "id-1", "ctx._source.max = params.count",
+                    Map.of("count", 5), Map.of("max", 5)));
+            }
+        });
+    }
+
+    @Test
+    void failedUpdateThrowsException() throws Exception {
+        var response = new ElasticBulkResponse();
+        response.errors = true;
+        response.items = List.of(Map.of("update", Map.of("error", Map.of("type", "bad_script"))));
+        when(mockedElasticSearch.invokeCheckAndConvert(eq(ElasticBulkResponse.class),
+            eq(HttpMethod.POST), eq("/_bulk"), anyString())).thenReturn(response);
+
+        assertThrows(JobException.class, () -> {
+            try (var batch = new ElasticBatch(mockedElasticSearch)) {
+                batch.add(BatchItem.upsertEntry("testing", "id-1", "ctx._source.max = params.count",
+                    Map.of("count", 5), Map.of("max", 5)));
+            }
+        });
+    }
+
     private ElasticResponse getBadParameterResponse() {
         return new ElasticResponse(400, "Bad Request", null);
     }
@@ -0,0 +1,111 @@
+package com.paladincloud.commons.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.paladincloud.common.errors.JobException;
+import com.paladincloud.common.search.ElasticResponse;
+import com.paladincloud.common.search.ElasticSearchHelper;
+import com.paladincloud.common.search.ElasticSearchHelper.HttpMethod;
+import com.paladincloud.common.search.IndexShardPlanner;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class IndexShardPlannerTests {
+
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    @Mock
+    ElasticSearchHelper elasticSearch;
+
+    @Test
+    void smallIndexGetsOneShard() {
+        assertEquals(1, IndexShardPlanner.shardsForSize(0, "10:2,30:4"));
+        assertEquals(1, IndexShardPlanner.shardsForSize(10 * GB - 1, "10:2,30:4"));
+    }
+
+    @Test
+    void largestReachedThresholdWins() {
+        assertEquals(2, IndexShardPlanner.shardsForSize(10 * GB, "10:2,30:4"));
+        assertEquals(4, IndexShardPlanner.shardsForSize(31 * GB, "30:4,10:2"));
+    }
+
+    @Test
+    void emptyThresholdsUseOneShard() {
+        assertEquals(1, IndexShardPlanner.shardsForSize(100 * GB, ""));
+        assertEquals(1, IndexShardPlanner.shardsForSize(100 * GB, null));
+    }
+
+    @Test
+    void badThresholdThrows() {
+        assertThrows(JobException.class, () -> IndexShardPlanner.shardsForSize(GB, "10"));
+    }
+
+    @Test
+    void splitTargetIsMultipleOfCurrent() {
+        assertEquals(2, IndexShardPlanner.splitTarget(1, 2));
+        assertEquals(4, IndexShardPlanner.splitTarget(1, 3));
+        assertEquals(6, IndexShardPlanner.splitTarget(3, 4));
+        assertEquals(4, IndexShardPlanner.splitTarget(4, 4));
+    }
+
+    @Test
+    void failedSwapDeletesTheSplitIndex() throws IOException {
+        givenIndexToSplit();
+        when(elasticSearch.indexMissing("aws_ec2-s2")).thenReturn(true);
+        when(elasticSearch.invokeAndCheck(eq(HttpMethod.POST), eq("_aliases"), anyString()))
+            .thenThrow(new IOException("alias swap failed"));
+
+        assertThrows(JobException.class,
+            () -> new IndexShardPlanner(elasticSearch).growIndices("aws"));
+        verify(elasticSearch).invokeAndCheck(eq(HttpMethod.POST),
+            eq("aws_ec2/_split/aws_ec2-s2"), anyString());
+        verify(elasticSearch).invokeAndCheck(HttpMethod.DELETE, "aws_ec2-s2", null);
+        verify(elasticSearch).invokeAndCheck(HttpMethod.PUT, "aws_ec2/_settings",
+            "{ \"index.blocks.write\": null }");
+    }
+
+    @Test
+    void leftoverSplitIndexIsDeletedBeforeSplitting() throws IOException {
+        givenIndexToSplit();
+        when(elasticSearch.indexMissing("aws_ec2-s2")).thenReturn(false);
+        when(elasticSearch.invoke(HttpMethod.HEAD, "aws_ec2-s2/_alias/aws_ec2", null))
+            .thenReturn(new ElasticResponse(404, "Not Found", null));
+
+        new IndexShardPlanner(elasticSearch).growIndices("aws");
+        var order = inOrder(elasticSearch);
+        order.verify(elasticSearch).invokeAndCheck(HttpMethod.DELETE, "aws_ec2-s2", null);
+        order.verify(elasticSearch).invokeAndCheck(eq(HttpMethod.POST),
+            eq("aws_ec2/_split/aws_ec2-s2"), anyString());
+        order.verify(elasticSearch).invokeAndCheck(eq(HttpMethod.POST), eq("_aliases"),
+            anyString());
+    }
+
+    /**
+     * An 'aws_ec2' index of one shard, large enough for two by the default thresholds.
+     */
+    private void givenIndexToSplit() throws IOException {
+        when(elasticSearch.invokeAndCheck(any(), anyString(), any())).thenReturn(
+            new ElasticResponse(200, "OK", null));
+        when(elasticSearch.invokeAndCheck(eq(HttpMethod.GET), startsWith("_cat/indices/aws_*"),
+            isNull())).thenReturn(new ElasticResponse(200, "OK", STR."""
+            [ { "index": "aws_ec2", "pri": "1", "pri.store.size": "\{11 * GB}" } ]
+            """));
+        when(elasticSearch.invokeAndCheck(eq(HttpMethod.GET), startsWith("_cluster/health/"),
+            isNull())).thenReturn(new ElasticResponse(200, "OK", """
+            { "timed_out": false }
+            """));
+    }
+}